@@ -14,8 +14,11 @@ import com.archebot.utilities.StringUtils;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * The ArcheBot class acts as a bridge between developers and the IRC server. Through it, developers can access lists
@@ -33,6 +36,10 @@ import java.util.Date;
 public class ArcheBot extends User {
 
     public static final String VERSION = "2.1";
+    /**
+     * @deprecated Log lines are now timestamped by the bot's log writer, and this format is no longer used.
+     */
+    @Deprecated
     protected static final SimpleDateFormat dateFormat = new SimpleDateFormat("[HH:mm:ss:SSS] ");
     private final long startTime = System.currentTimeMillis();
     private long connectTime = 0;
@@ -40,10 +47,12 @@ public class ArcheBot extends User {
     private CommandMap commandMap = new CommandMap();
     private ServerMap serverMap = new ServerMap();
     private UserMap userMap = new UserMap();
-    private PrintStream logStream = System.out;
+    private final LogWriter logWriter;
     private State state = State.idle;
     private Configuration configuration;
+    private Configuration replayedConfiguration;
     private Connection connection;
+    private ConfigurationWatcher watcher;
     private Handler handler;
 
     public ArcheBot() {
@@ -56,6 +65,7 @@ public class ArcheBot extends User {
 
     public ArcheBot(Configuration configuration) {
         super(null, configuration.isSet(Property.nick) ? configuration.getNick() : "");
+        logWriter = new LogWriter(configuration.getName(), System.out);
         setKnown(true);
         setConfiguration(configuration);
         userMap.addUser(this);
@@ -63,6 +73,12 @@ public class ArcheBot extends User {
         log("Initial configuration: " + configuration.getName());
     }
 
+    public CompletableFuture<TreeSet<String>> banListAsync(String channel) throws ConnectionStateException {
+        if (state == State.connecting || state == State.connected)
+            return connection.banListAsync(channel);
+        throw new ConnectionStateException(state, "Unable to send output [MODE " + channel + " +b]");
+    }
+
     public void breakThread() throws ConnectionStateException {
         if (state == State.idle)
             throw new ConnectionStateException(state, "Unable to break handler thread");
@@ -83,6 +99,10 @@ public class ArcheBot extends User {
             try {
                 connection = new Connection(this);
                 connectTime = System.currentTimeMillis();
+                if (configuration.getBoolean(Property.watchConfig) && configuration.isSavable()) {
+                    watcher = new ConfigurationWatcher(this);
+                    watcher.start();
+                }
             } catch (IOException e) {
                 int delay = configuration.getInteger(Property.reconnectDelay);
                 logError("[ArcheBot::connect] An internal exception has occurred (%s)", e.getMessage());
@@ -216,6 +236,10 @@ public class ArcheBot extends User {
         return userMap;
     }
 
+    public boolean hasCapability(String capability) {
+        return connection != null && connection.hasCapability(capability);
+    }
+
     public boolean hasHandler() {
         return handler != null;
     }
@@ -224,16 +248,89 @@ public class ArcheBot extends User {
         return state == State.connected;
     }
 
+    public boolean isLogging(LogLevel level) {
+        return configuration.getSnapshot().isLogging(level);
+    }
+
+    public CompletableFuture<TreeSet<ListResult>> listAsync() throws ConnectionStateException {
+        if (state == State.connecting || state == State.connected)
+            return connection.listAsync();
+        throw new ConnectionStateException(state, "Unable to send output [LIST]");
+    }
+
     public void log(String message, Object... objects) {
-        if (objects.length > 0)
-            message = String.format(message, objects);
-        print("<> ", message);
+        log(LogLevel.info, message, objects);
+    }
+
+    public void log(Supplier<String> message) {
+        log(LogLevel.info, message);
+    }
+
+    /**
+     * Logs a message if messages of its level are enabled. The message is only formatted once it is known to be logged,
+     * so disabled levels cost no more than the check.
+     *
+     * @param level the level of the message
+     * @param message the message, or a format string if objects are given
+     * @param objects the arguments of the format string
+     */
+    public void log(LogLevel level, String message, Object... objects) {
+        if (isLogging(level))
+            logWriter.print(level.getPrefix(), objects.length > 0 ? String.format(message, objects) : message);
+    }
+
+    /**
+     * Logs a message if messages of its level are enabled. The supplier is only called once the message is known to be
+     * logged, for messages that are expensive to build.
+     *
+     * @param level the level of the message
+     * @param message supplies the message
+     */
+    public void log(LogLevel level, Supplier<String> message) {
+        if (isLogging(level))
+            logWriter.print(level.getPrefix(), message.get());
+    }
+
+    public void logDebug(String message, Object... objects) {
+        log(LogLevel.debug, message, objects);
+    }
+
+    public void logDebug(Supplier<String> message) {
+        log(LogLevel.debug, message);
     }
 
     public void logError(String error, Object... objects) {
-        if (objects.length > 0)
-            error = String.format(error, objects);
-        print("== Error: ", error);
+        log(LogLevel.error, error, objects);
+    }
+
+    public void logError(Supplier<String> error) {
+        log(LogLevel.error, error);
+    }
+
+    /**
+     * Reloads the configuration from its file and applies the differences while connected, joining or parting
+     * channels, reloading the permissions of affected users, and notifying the handler. This is done automatically
+     * when the watchConfig property is enabled.
+     *
+     * @return the changes that were applied
+     */
+    @SuppressWarnings("unchecked")
+    public ConfigurationChange reloadConfiguration() throws IOException {
+        ConfigurationChange change = configuration.reload();
+        if (!change.isEmpty()) {
+            if (connection != null)
+                connection.applyChange(change);
+            for (User user : userMap)
+                if (change.getPermissionKeys().contains(user.getPermissionKey())) {
+                    user.clearPermissions();
+                    configuration.loadPermissions(user);
+                    user.setPermissionsChanged(false);
+                }
+            log("Configuration reloaded (%s)", change);
+            if (handler != null)
+                handler.onConfigurationChange(this, change);
+        }
+        return change;
     }
 
     public void send(Output output) throws ConnectionStateException {
@@ -258,10 +355,10 @@ public class ArcheBot extends User {
     }
 
     public void setConfiguration(Configuration configuration) throws ConnectionStateException {
-        if (state == State.idle)
-            this.configuration = configuration;
-        else
+        if (state != State.idle)
             throw new ConnectionStateException(state, "Unable to set configuration");
+        this.configuration = configuration;
+        configuration.setBot(this);
     }
 
     public void setHandler(Handler handler) {
@@ -269,7 +366,7 @@ public class ArcheBot extends User {
     }
 
     public void setLogStream(PrintStream stream) {
-        logStream = stream;
+        logWriter.setStream(stream);
     }
 
     public void setServerMap(ServerMap serverMap) {
@@ -282,6 +379,18 @@ public class ArcheBot extends User {
             userMap.addUser(this);
     }
 
+    public CompletableFuture<TreeSet<User>> whoAsync(String mask) throws ConnectionStateException {
+        if (state == State.connecting || state == State.connected)
+            return connection.whoAsync(mask);
+        throw new ConnectionStateException(state, "Unable to send output [WHO " + mask + "]");
+    }
+
+    public CompletableFuture<WhoisResult> whoisAsync(String nick) throws ConnectionStateException {
+        if (state == State.connecting || state == State.connected)
+            return connection.whoisAsync(nick);
+        throw new ConnectionStateException(state, "Unable to send output [WHOIS " + nick + "]");
+    }
+
     @Override
     public void action(String action, Object... objects) throws ConnectionStateException {
         ctcp("ACTION", action, objects);
@@ -294,6 +403,8 @@ public class ArcheBot extends User {
 
     @Override
     public void debug() {
+        if (!isLogging(LogLevel.info))
+            return;
         log(getIdentity());
         if (!getRealname().isEmpty())
             log("   Real name: " + getRealname());
@@ -322,6 +433,11 @@ public class ArcheBot extends User {
         send("NOTICE " + getNick() + " :" + notice, objects);
     }
 
+    @Override
+    public void whois() throws ConnectionStateException {
+        whois(this);
+    }
+
     protected void logInput(String line) {
         print("<- ", line);
     }
@@ -334,40 +450,101 @@ public class ArcheBot extends User {
         print("<==> ", line);
     }
 
+    void execute(Runnable task) throws ConnectionStateException {
+        if (state == State.connecting || state == State.connected)
+            connection.execute(task);
+        else
+            throw new ConnectionStateException(state, "Unable to queue a task");
+    }
+
+    String fold(String name) {
+        Server server = getServer();
+        return server == null ? name.toLowerCase() : server.fold(name);
+    }
+
+    void scheduleReload() {
+        Connection connection = this.connection;
+        if (connection != null)
+            connection.execute(this::reload);
+        else
+            reload();
+    }
+
     void setState(State state) {
         this.state = state;
     }
 
-    @SuppressWarnings("unchecked")
     void shutdown(String reason) {
+        shutdown(reason, replayedConfiguration == null);
+    }
+
+    Connection startReplay(Writer output) throws IOException {
+        if (state != State.idle)
+            throw new ConnectionStateException(state, "Unable to replay");
+        if (!hasHandler())
+            setHandler(new Handler<>());
+        replayedConfiguration = configuration;
+        configuration = configuration.detach();
+        connection = new Connection(this, output);
+        connectTime = System.currentTimeMillis();
+        return connection;
+    }
+
+    void stopReplay() {
+        shutdown("Replay finished", false);
+    }
+
+    void whois(User user) throws ConnectionStateException {
+        if (state == State.connecting || state == State.connected)
+            connection.whois(user);
+        else
+            throw new ConnectionStateException(state, "Unable to send output [WHOIS " + user.getNick() + "]");
+    }
+
+    private void reload() {
+        try {
+            reloadConfiguration();
+        } catch (IOException e) {
+            logError("[ArcheBot::reload] Unable to reload the configuration (%s)", e.getMessage());
+        }
+    }
+
+    private void print(String prefix, String line) {
+        if (configuration.getSnapshot().isLoggingEnabled())
+            logWriter.print(prefix, line);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void shutdown(String reason, boolean save) {
         if (connection == null)
             return;
         state = State.disconnecting;
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
         connection.close();
         connection = null;
         handler.onDisconnect(this, reason);
         connectTime = 0;
-        if (configuration.getBoolean(Property.autoSavePerms))
+        if (save && configuration.getBoolean(Property.autoSavePerms))
             userMap.forEach(configuration::storePermissions);
         channelMap.clear();
         serverMap.clear();
         userMap.clear();
         clearModes();
-        if (configuration.getBoolean(Property.autoSaveConfig))
+        if (save && configuration.getBoolean(Property.autoSaveConfig))
             try {
                 configuration.save();
             } catch (IOException e) {
                 logError("[ArcheBot::shutdown] An error occurred while saving the configuration (%s)", e.getMessage());
             }
+        if (replayedConfiguration != null) {
+            configuration = replayedConfiguration;
+            replayedConfiguration = null;
+        }
         log("Disconnected (%s)", reason);
+        logWriter.close();
         state = State.idle;
     }
-
-    private synchronized void print(String prefix, String line) {
-        if (configuration.getBoolean(Property.enableLogging)) {
-            logStream.print(dateFormat.format(new Date()));
-            logStream.print(prefix);
-            logStream.println(line);
-        }
-    }
 }
@@ -0,0 +1,87 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.*;
+
+/**
+ * Keeps the most recently used entries of another permission store in memory, so users who rejoin or are looked up
+ * repeatedly do not go back to the underlying store. Keys without grants are cached too. Writes go through to the
+ * underlying store immediately, and the least recently used entry is evicted once the cache is full.
+ */
+public class CachedPermissionStore implements PermissionStore {
+
+    private final PermissionStore store;
+    private final LinkedHashMap<String, CachedEntry> cache;
+
+    public CachedPermissionStore(PermissionStore store, int capacity) {
+        this.store = store;
+        cache = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        CachedEntry entry = getEntry(key);
+        return !entry.permissions.isEmpty() || !entry.channelPermissions.isEmpty();
+    }
+
+    @Override
+    public synchronized Map<String, Set<String>> getChannelPermissions(String key) {
+        return PermissionStore.copy(getEntry(key).channelPermissions);
+    }
+
+    @Override
+    public synchronized Set<String> getPermissions(String key) {
+        return new HashSet<>(getEntry(key).permissions);
+    }
+
+    public PermissionStore getStore() {
+        return store;
+    }
+
+    @Override
+    public synchronized void put(String key, Set<String> permissions, Map<String, Set<String>> channelPermissions) {
+        store.put(key, permissions, channelPermissions);
+        cache.put(key, new CachedEntry(new HashSet<>(permissions), PermissionStore.copy(channelPermissions)));
+    }
+
+    @Override
+    public synchronized int size() {
+        return store.size();
+    }
+
+    private CachedEntry getEntry(String key) {
+        CachedEntry entry = cache.get(key);
+        if (entry == null) {
+            entry = new CachedEntry(new HashSet<>(store.getPermissions(key)), PermissionStore.copy(store.getChannelPermissions(key)));
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static final class CachedEntry {
+
+        private final Set<String> permissions;
+        private final Map<String, Set<String>> channelPermissions;
+
+        private CachedEntry(Set<String> permissions, Map<String, Set<String>> channelPermissions) {
+            this.permissions = permissions;
+            this.channelPermissions = channelPermissions;
+        }
+    }
+}
@@ -21,12 +21,13 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
 
     protected final ArcheBot bot;
     protected final String name;
-    private final TreeMap<User, HashSet<Character>> users = new TreeMap<>();
+    private HashMap<User, HashSet<Character>> users = new HashMap<>();
     private final HashMap<Character, String> modes = new HashMap<>();
     private final HashMap<Character, HashSet<String>> listModes = new HashMap<>();
     private long topicTimestamp = -1;
     private String topic = "";
     private String topicSetter = "";
+    private ModeBuilder pendingModes;
 
     public Channel(ArcheBot bot, String name) {
         this.bot = bot;
@@ -38,7 +39,7 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
     }
 
     public void addMode(char mode) throws ConnectionStateException {
-        bot.send("MODE " + name + " +" + mode);
+        queueMode(true, mode, "");
     }
 
     public void addMode(char mode, User user) throws ConnectionStateException {
@@ -46,7 +47,14 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
     }
 
     public void addMode(char mode, String value) throws ConnectionStateException {
-        bot.send("MODE " + name + " +" + mode + " " + value);
+        queueMode(true, mode, value);
+    }
+
+    public void addModes(char mode, User... users) throws ConnectionStateException {
+        ModeBuilder builder = new ModeBuilder(this);
+        for (User user : users)
+            builder.add(mode, user);
+        builder.send();
     }
 
     public boolean contains(User user) {
@@ -58,6 +66,8 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
     }
 
     public void debug() {
+        if (!bot.isLogging(LogLevel.info))
+            return;
         bot.log(name);
         bot.log("   Size: %s", StringUtils.formatQuantity(users.size(), "user", "users"));
         if (!topic.isEmpty()) {
@@ -171,7 +181,7 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
     }
 
     public void removeMode(char mode) throws ConnectionStateException {
-        bot.send("MODE " + name + " -" + mode);
+        queueMode(false, mode, "");
     }
 
     public void removeMode(char mode, User user) throws ConnectionStateException {
@@ -179,7 +189,14 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
     }
 
     public void removeMode(char mode, String value) throws ConnectionStateException {
-        bot.send("MODE " + name + " -" + mode + " " + value);
+        queueMode(false, mode, value);
+    }
+
+    public void removeModes(char mode, User... users) throws ConnectionStateException {
+        ModeBuilder builder = new ModeBuilder(this);
+        for (User user : users)
+            builder.remove(mode, user);
+        builder.send();
     }
 
     public int size() {
@@ -225,6 +242,18 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
         users.put(user, new HashSet<>());
     }
 
+    protected void addUsers(Map<User, HashSet<Character>> additions) {
+        boolean larger = additions.size() > users.size();
+        HashMap<User, HashSet<Character>> merged = larger ? new HashMap<>(additions) : users;
+        (larger ? users : additions).forEach((user, modes) -> {
+            if (merged.containsKey(user))
+                merged.get(user).addAll(modes);
+            else
+                merged.put(user, modes);
+        });
+        users = merged;
+    }
+
     protected void modeAdd(User user, char mode) {
         if (contains(user) && !hasMode(user, mode))
             users.get(user).add(mode);
@@ -255,6 +284,10 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
         users.remove(user);
     }
 
+    protected void removeUsers(Collection<User> removals) {
+        users.keySet().removeAll(removals);
+    }
+
     protected void setTopic(String topic) {
         this.topic = topic;
     }
@@ -266,4 +299,32 @@ public class Channel implements Comparable<Channel>, Iterable<User> {
     protected void setTopicTimestamp(long topicTimestamp) {
         this.topicTimestamp = topicTimestamp;
     }
+
+    /**
+     * Collects single mode changes until the handler thread next gets to its queued tasks, so a burst of them, such as
+     * a handler opping several users in a loop, is sent in as few MODE lines as the server allows.
+     */
+    private synchronized void queueMode(boolean added, char mode, String value) throws ConnectionStateException {
+        if (pendingModes == null) {
+            bot.execute(this::sendModes);
+            pendingModes = new ModeBuilder(this);
+        }
+        if (added)
+            pendingModes.add(mode, value);
+        else
+            pendingModes.remove(mode, value);
+    }
+
+    private void sendModes() {
+        ModeBuilder builder;
+        synchronized (this) {
+            builder = pendingModes;
+            pendingModes = null;
+        }
+        try {
+            builder.send();
+        } catch (ConnectionStateException e) {
+            bot.logError("[Channel::sendModes] Unable to send mode changes for %s (%s)", name, e.getMessage());
+        }
+    }
 }
@@ -13,19 +13,37 @@ import com.archebot.utilities.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
+/**
+ * Holds the properties, channels, and stored permissions of a bot. When the configuration has a directory, every change
+ * is appended to a journal as it is made, and saving compacts the journal into the configuration file on a background
+ * thread. The file is replaced atomically, and loading replays any journal entries that were not yet compacted, so
+ * neither a crash nor an interrupted save loses changes.
+ */
 public class Configuration {
 
+    private static final int COMPACT_THRESHOLD = 1000;
     private final HashMap<Property, Object> values = new HashMap<>();
-    private final HashMap<String, Set<String>> permissions = new HashMap<>();
     private final HashSet<String> channels = new HashSet<>();
+    private final HostmaskMatcher hostmasks = new HostmaskMatcher();
+    private PermissionStore store = new MemoryPermissionStore();
+    private volatile ConfigurationSnapshot snapshot = new ConfigurationSnapshot(values);
     private String name;
     private String directory = null;
+    private Journal journal;
+    private Thread compactor;
+    private volatile ArcheBot bot;
+    private long writtenTime = -1;
+    private long writtenSize = -1;
+    private boolean replaying = false;
 
     public Configuration() {
         this("default");
@@ -43,6 +61,7 @@ public class Configuration {
 
     public void addChannel(String channel) {
         channels.add(channel);
+        record("channel+ " + channel);
     }
 
     public void addPermission(String user, Permission permission) {
@@ -50,21 +69,36 @@ public class Configuration {
     }
 
     public void addPermission(String user, String permission) {
-        if (!hasPermissions(user))
-            permissions.put(user.toLowerCase(), new HashSet<>());
-        permissions.get(user.toLowerCase()).add(permission);
+        store.add(user.toLowerCase(), permission);
+        recordPermissions("perm+ " + user + " " + permission);
+    }
+
+    public void addPermission(String user, String channel, String permission) {
+        store.add(user.toLowerCase(), channel.toLowerCase(), permission);
+        recordPermissions("cperm+ " + user + " " + channel + " " + permission);
+    }
+
+    public void addHostmaskPermission(String mask, Permission permission) {
+        addHostmaskPermission(mask, permission.getName());
+    }
+
+    public void addHostmaskPermission(String mask, String permission) {
+        hostmasks.add(mask, permission);
+        record("mask+ " + mask + " " + permission);
+    }
+
+    public void clearHostmaskPermissions(String mask) {
+        hostmasks.clear(mask);
+        record("masks- " + mask);
     }
 
     public void clearPermissions(String user) {
-        permissions.remove(user.toLowerCase());
+        store.remove(user.toLowerCase());
+        recordPermissions("perms- " + user);
     }
 
     public boolean getBoolean(Property property) {
-        Object value = getValue(property);
-        if (value instanceof Boolean)
-            return (boolean) value;
-        value = property.getDefaultValue();
-        return value instanceof Boolean && (boolean) value;
+        return snapshot.getBoolean(property);
     }
 
     public TreeSet<String> getChannels() {
@@ -75,13 +109,12 @@ public class Configuration {
         return directory;
     }
 
+    public TreeMap<String, TreeSet<String>> getHostmaskPermissions() {
+        return hostmasks.getRules();
+    }
+
     public int getInteger(Property property) {
-        Object value = getValue(property);
-        if (value instanceof Integer)
-            return (int) value;
-        if (property.getDefaultValue() instanceof Integer)
-            return (int) property.getDefaultValue();
-        return 0;
+        return snapshot.getInteger(property);
     }
 
     public String getName() {
@@ -92,6 +125,10 @@ public class Configuration {
         return getString(Property.nick);
     }
 
+    public PermissionStore getPermissionStore() {
+        return store;
+    }
+
     public int getPort() {
         return getInteger(Property.port);
     }
@@ -100,22 +137,24 @@ public class Configuration {
         return getString(Property.server);
     }
 
+    public ConfigurationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     public String getString(Property property) {
-        return getValue(property).toString();
+        return snapshot.getString(property);
     }
 
     public Object getValue(Property property) {
-        if (isSet(property))
-            return values.get(property);
-        return property.getDefaultValue();
+        return snapshot.getValue(property);
     }
 
     public boolean hasPermissions(User user) {
-        return hasPermissions(user.getNick());
+        return hasPermissions(user.getPermissionKey());
     }
 
     public boolean hasPermissions(String user) {
-        return permissions.containsKey(user.toLowerCase());
+        return store.contains(user.toLowerCase());
     }
 
     public boolean includesChannel(String channel) {
@@ -131,16 +170,58 @@ public class Configuration {
     }
 
     public void loadPermissions(User user) {
-        if (hasPermissions(user))
-            permissions.get(user.getNick().toLowerCase()).forEach(user::givePermission);
+        String key = user.getPermissionKey();
+        boolean changed = user.hasChangedPermissions();
+        store.getPermissions(key).forEach(user::givePermission);
+        store.getChannelPermissions(key).forEach((c, s) -> s.forEach(p -> user.givePermission(c, Permission.get(p))));
+        user.setPermissionsChanged(changed);
     }
 
     public int permissionsSize() {
-        return permissions.size();
+        return store.size();
+    }
+
+    public boolean renamePermissions(String oldUser, String newUser) {
+        if (!store.rename(oldUser.toLowerCase(), newUser.toLowerCase()))
+            return false;
+        recordPermissions("rename " + oldUser + " " + newUser);
+        return true;
+    }
+
+    /**
+     * Reads the configuration file again and applies whatever differs from this configuration. Journal entries are only
+     * applied over the file if they were made after it was last modified, so an entry the file was edited to undo does
+     * not come back.
+     *
+     * @return the changes that were applied
+     */
+    public ConfigurationChange reload() throws IOException {
+        if (!isSavable())
+            return new ConfigurationChange();
+        Configuration configuration = read(directory, name);
+        long modified = new File(directory + name + ".pml").lastModified();
+        synchronized (this) {
+            if (journal != null) {
+                configuration.replaying = true;
+                journal.replay(configuration::apply, modified);
+                configuration.replaying = false;
+            }
+        }
+        return update(configuration);
     }
 
     public void removeChannel(String channel) {
         channels.remove(channel);
+        record("channel- " + channel);
+    }
+
+    public void removeHostmaskPermission(String mask, Permission permission) {
+        removeHostmaskPermission(mask, permission.getName());
+    }
+
+    public void removeHostmaskPermission(String mask, String permission) {
+        hostmasks.remove(mask, permission);
+        record("mask- " + mask + " " + permission);
     }
 
     public void removePermission(String user, Permission permission) {
@@ -148,27 +229,26 @@ public class Configuration {
     }
 
     public void removePermission(String user, String permission) {
-        if (hasPermissions(user)) {
-            Set<String> perms = permissions.get(user.toLowerCase());
-            perms.remove(permission);
-            if (perms.size() == 0)
-                permissions.remove(user.toLowerCase());
-        }
+        store.remove(user.toLowerCase(), permission);
+        recordPermissions("perm- " + user + " " + permission);
+    }
+
+    public void removePermission(String user, String channel, String permission) {
+        store.remove(user.toLowerCase(), channel.toLowerCase(), permission);
+        recordPermissions("cperm- " + user + " " + channel + " " + permission);
     }
 
     public void removeValue(Property property) {
         values.remove(property);
+        snapshot = new ConfigurationSnapshot(values);
+        record("unset " + property.name());
     }
 
     public void save() throws IOException {
         if (isSavable()) {
-            Element element = new Element(directory + name);
-            Element props = element.getChild("properties");
-            values.keySet().forEach(p -> props.getChild(p.name()).setContent(getString(p)));
-            Element perms = element.getChild("permissions");
-            permissions.keySet().forEach(u -> permissions.get(u).forEach(p -> perms.addChild(new Element(u, p))));
-            channels.forEach(c -> element.addChild(new Element("channel", c)));
-            element.write();
+            if (journal == null)
+                journal = new Journal(new File(directory + name + ".journal"));
+            compact();
         }
     }
 
@@ -176,16 +256,31 @@ public class Configuration {
         if (directory != null && !directory.isEmpty() && !directory.endsWith(File.separator))
             directory += File.separator;
         this.directory = directory;
+        closeJournal();
     }
 
     public void setName(String name) {
         this.name = name;
+        closeJournal();
     }
 
     public void setNick(String nick) {
         setValue(Property.nick, nick);
     }
 
+    /**
+     * Replaces the store that permission grants are kept in. Any grants held by the default in-memory store are copied
+     * into the new one, so a configuration loaded from a file can be moved to a larger store in one step. Grants are
+     * only saved with the configuration, and journaled, while the in-memory store is in use.
+     */
+    public void setPermissionStore(PermissionStore store) {
+        if (this.store instanceof MemoryPermissionStore) {
+            MemoryPermissionStore memory = (MemoryPermissionStore) this.store;
+            memory.getKeys().forEach(k -> store.put(k, memory.getPermissions(k), memory.getChannelPermissions(k)));
+        }
+        this.store = store;
+    }
+
     public void setPort(int port) {
         setValue(Property.port, port);
     }
@@ -196,6 +291,8 @@ public class Configuration {
 
     public Object setValue(Property property, Object value) {
         values.put(property, value);
+        snapshot = new ConfigurationSnapshot(values);
+        record("set " + property.name() + " " + Journal.escape(String.valueOf(value)));
         return value;
     }
 
@@ -204,11 +301,58 @@ public class Configuration {
     }
 
     public void storePermissions(User user) {
-        Set<String> perms = user.getPermissions(p -> p.isSavable() && user.isIncluded(p)).stream().map(Permission::getName).collect(Collectors.toSet());
-        if (perms.size() > 0)
-            permissions.put(user.getNick().toLowerCase(), perms);
-        else if (hasPermissions(user))
-            permissions.remove(user.getNick().toLowerCase());
+        storePermissions(user, user.getPermissionKey());
+    }
+
+    /**
+     * Changes this configuration to match another one. Only the values that differ are changed, and each change is
+     * journaled as if it had been made directly. Permissions are only compared while both configurations use the
+     * in-memory permission store.
+     *
+     * @param configuration the configuration to copy
+     * @return the changes that were applied
+     */
+    public ConfigurationChange update(Configuration configuration) {
+        ConfigurationChange change = new ConfigurationChange();
+        for (Property property : Property.values()) {
+            if (configuration.isSet(property) && !configuration.getString(property).equals(String.valueOf(values.get(property)))) {
+                setValue(property, configuration.getValue(property));
+                change.addProperty(property);
+            } else if (!configuration.isSet(property) && isSet(property)) {
+                removeValue(property);
+                change.addProperty(property);
+            }
+        }
+        for (String channel : configuration.channels)
+            if (!channels.contains(channel)) {
+                addChannel(channel);
+                change.addChannel(channel);
+            }
+        for (String channel : getChannels())
+            if (!configuration.channels.contains(channel)) {
+                removeChannel(channel);
+                change.removeChannel(channel);
+            }
+        if (store instanceof MemoryPermissionStore && configuration.store instanceof MemoryPermissionStore) {
+            Set<String> keys = ((MemoryPermissionStore) store).getKeys();
+            keys.addAll(((MemoryPermissionStore) configuration.store).getKeys());
+            for (String key : keys) {
+                Set<String> perms = configuration.store.getPermissions(key);
+                Map<String, Set<String>> channels = configuration.store.getChannelPermissions(key);
+                if (!perms.equals(store.getPermissions(key)) || !channels.equals(store.getChannelPermissions(key))) {
+                    putPermissions(key, perms, channels);
+                    change.addPermissionKey(key);
+                }
+            }
+        }
+        TreeMap<String, TreeSet<String>> masks = configuration.getHostmaskPermissions();
+        TreeMap<String, TreeSet<String>> current = getHostmaskPermissions();
+        if (!masks.equals(current)) {
+            current.keySet().forEach(this::clearHostmaskPermissions);
+            masks.forEach((m, s) -> s.forEach(p -> addHostmaskPermission(m, p)));
+            change.setHostmasksChanged(true);
+        }
+        return change;
     }
 
     @Override
@@ -216,6 +360,174 @@ public class Configuration {
         return name;
     }
 
+    /**
+     * Creates a copy of this configuration that has no directory, so it is never journaled or saved, and whose
+     * permission store keeps its changes in memory instead of writing them to this configuration's store.
+     */
+    Configuration detach() {
+        Configuration copy = new Configuration(name);
+        copy.values.putAll(values);
+        copy.snapshot = new ConfigurationSnapshot(copy.values);
+        copy.channels.addAll(channels);
+        getHostmaskPermissions().forEach((m, s) -> s.forEach(p -> copy.addHostmaskPermission(m, p)));
+        copy.store = new OverlayPermissionStore(store);
+        copy.bot = bot;
+        return copy;
+    }
+
+    HostmaskMatcher getHostmaskMatcher() {
+        return hostmasks;
+    }
+
+    /**
+     * Whether a configuration file is exactly as this configuration last wrote it, judged by its modification time and
+     * size, so changes made by the configuration itself can be told apart from edits made to the file.
+     */
+    synchronized boolean isWritten(File file) {
+        return file.lastModified() == writtenTime && file.length() == writtenSize;
+    }
+
+    void setBot(ArcheBot bot) {
+        this.bot = bot;
+    }
+
+    void storePermissions(User user, String key) {
+        if (!user.hasChangedPermissions())
+            return;
+        Set<String> perms = user.getPermissions(p -> p.isSavable() && user.isIncluded(p)).stream().map(Permission::getName).collect(Collectors.toSet());
+        HashMap<String, Set<String>> channels = new HashMap<>();
+        user.getChannelGrants().forEach((c, s) -> {
+            Set<String> names = s.stream().filter(Permission::isSavable).map(Permission::getName).collect(Collectors.toSet());
+            if (names.size() > 0)
+                channels.put(c, names);
+        });
+        putPermissions(key, perms, channels);
+        user.setPermissionsChanged(false);
+    }
+
+    private void apply(String entry) {
+        String[] parts = entry.split(" ", 4);
+        if (parts.length < 2)
+            return;
+        switch (parts[0]) {
+            case "set":
+                if (parts.length > 2 && Property.isValue(parts[1]))
+                    setValue(Property.valueOf(parts[1]), toObject(Journal.unescape(entry.substring(entry.indexOf(' ', 4) + 1))));
+                break;
+            case "unset":
+                if (Property.isValue(parts[1]))
+                    removeValue(Property.valueOf(parts[1]));
+                break;
+            case "channel+": addChannel(parts[1]); break;
+            case "channel-": removeChannel(parts[1]); break;
+            case "perm+": if (parts.length == 3) addPermission(parts[1], parts[2]); break;
+            case "perm-": if (parts.length == 3) removePermission(parts[1], parts[2]); break;
+            case "perms-": clearPermissions(parts[1]); break;
+            case "rename": if (parts.length == 3) renamePermissions(parts[1], parts[2]); break;
+            case "cperm+": if (parts.length == 4) addPermission(parts[1], parts[2], parts[3]); break;
+            case "cperm-": if (parts.length == 4) removePermission(parts[1], parts[2], parts[3]); break;
+            case "mask+": if (parts.length == 3) addHostmaskPermission(parts[1], parts[2]); break;
+            case "mask-": if (parts.length == 3) removeHostmaskPermission(parts[1], parts[2]); break;
+            case "masks-": clearHostmaskPermissions(parts[1]); break;
+        }
+    }
+
+    private synchronized void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private synchronized void compact() throws IOException {
+        if (compactor != null && compactor.isAlive())
+            return;
+        Element element = toElement();
+        journal.rotate();
+        Journal rotated = journal;
+        String file = directory + name;
+        compactor = new Thread(() -> {
+            try {
+                write(element, file);
+                rotated.discard();
+            } catch (IOException e) {
+                logError("[Configuration::compact] Unable to write the compacted configuration", e);
+            }
+        }, "Configuration compactor (" + name + ")");
+        compactor.start();
+    }
+
+    private void logError(String message, IOException e) {
+        ArcheBot bot = this.bot;
+        if (bot == null)
+            throw new UncheckedIOException(message, e);
+        bot.logError(message + " (%s)", e.getMessage());
+    }
+
+    private synchronized void record(String entry) {
+        if (replaying || !isSavable())
+            return;
+        try {
+            if (journal == null) {
+                journal = new Journal(new File(directory + name + ".journal"));
+                if (!new File(directory + name + ".pml").exists())
+                    write(toElement(), directory + name);
+            }
+            journal.append(entry);
+            if (journal.size() >= COMPACT_THRESHOLD)
+                compact();
+        } catch (IOException e) {
+            ArcheBot bot = this.bot;
+            if (bot != null)
+                bot.logError("[Configuration::record] Unable to journal a change, saving the whole configuration instead (%s)", e.getMessage());
+            try {
+                compact();
+            } catch (IOException f) {
+                closeJournal();
+                logError("[Configuration::record] Unable to save the configuration", f);
+            }
+        }
+    }
+
+    private void write(Element element, String file) throws IOException {
+        element.write(file);
+        File written = new File(file + ".pml");
+        synchronized (this) {
+            writtenTime = written.lastModified();
+            writtenSize = written.length();
+        }
+    }
+
+    private void putPermissions(String key, Set<String> perms, Map<String, Set<String>> channels) {
+        store.put(key, perms, channels);
+        recordPermissions("perms- " + key);
+        perms.forEach(p -> recordPermissions("perm+ " + key + " " + p));
+        channels.forEach((c, s) -> s.forEach(p -> recordPermissions("cperm+ " + key + " " + c + " " + p)));
+    }
+
+    private void recordPermissions(String entry) {
+        if (store instanceof MemoryPermissionStore)
+            record(entry);
+    }
+
+    private Element toElement() {
+        Element element = new Element("configuration");
+        Element props = element.getChild("properties");
+        values.keySet().forEach(p -> props.getChild(p.name()).setContent(getString(p)));
+        Element perms = element.getChild("permissions");
+        Element scoped = element.getChild("channelPermissions");
+        if (store instanceof MemoryPermissionStore) {
+            for (String u : ((MemoryPermissionStore) store).getKeys()) {
+                store.getPermissions(u).forEach(p -> perms.addChild(new Element(u, p)));
+                store.getChannelPermissions(u).forEach((c, s) -> s.forEach(p -> scoped.addChild(new Element(u, c + " " + p))));
+            }
+        }
+        Element masks = element.getChild("hostmaskPermissions");
+        hostmasks.getRules().forEach((m, s) -> s.forEach(p -> masks.addChild(new Element("mask", m + " " + p))));
+        channels.forEach(c -> element.addChild(new Element("channel", c)));
+        return element;
+    }
+
     private void updateValueFromElement(Element element) {
         setValue(Property.valueOf(element.getTag()), toObject(element.getContent()));
     }
@@ -225,12 +537,33 @@ public class Configuration {
     }
 
     public static Configuration load(String directory, String name) throws IOException {
+        Configuration configuration = read(directory, name);
+        configuration.replaying = true;
+        Journal journal = new Journal(new File(configuration.getDirectory() + name + ".journal"));
+        journal.replay(configuration::apply);
+        if (journal.size() > 0)
+            configuration.journal = journal;
+        configuration.replaying = false;
+        return configuration;
+    }
+
+    private static Configuration read(String directory, String name) throws IOException {
         Configuration configuration = new Configuration(name);
         configuration.setDirectory(directory);
+        configuration.replaying = true;
         Element element = Element.read(configuration.getDirectory() + name);
         element.getChild("properties").getChildren(e -> Property.isValue(e.getTag())).forEach(configuration::updateValueFromElement);
         element.getChild("permissions").forEach(e -> configuration.addPermission(e.getTag(), e.getContent()));
+        element.getChild("channelPermissions").getChildren(e -> e.getContent().contains(" ")).forEach(e -> {
+            String[] parts = e.getContent().split(" ", 2);
+            configuration.addPermission(e.getTag(), parts[0], parts[1]);
+        });
+        element.getChild("hostmaskPermissions").getChildren(e -> e.getContent().contains(" ")).forEach(e -> {
+            String[] parts = e.getContent().split(" ", 2);
+            configuration.addHostmaskPermission(parts[0], parts[1]);
+        });
         element.getChildren("channel").stream().map(Element::getContent).forEach(configuration::addChannel);
+        configuration.replaying = false;
         return configuration;
     }
 
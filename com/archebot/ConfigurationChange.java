@@ -0,0 +1,78 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.EnumSet;
+import java.util.TreeSet;
+
+/**
+ * The differences applied to a configuration when it was updated from another one, such as a reloaded copy of its
+ * file. Permission changes are listed by the key of the user they belong to.
+ */
+public class ConfigurationChange {
+
+    private final EnumSet<Property> properties = EnumSet.noneOf(Property.class);
+    private final TreeSet<String> addedChannels = new TreeSet<>();
+    private final TreeSet<String> removedChannels = new TreeSet<>();
+    private final TreeSet<String> permissionKeys = new TreeSet<>();
+    private boolean hostmasksChanged = false;
+
+    public TreeSet<String> getAddedChannels() {
+        return addedChannels;
+    }
+
+    public TreeSet<String> getPermissionKeys() {
+        return permissionKeys;
+    }
+
+    public EnumSet<Property> getProperties() {
+        return properties;
+    }
+
+    public TreeSet<String> getRemovedChannels() {
+        return removedChannels;
+    }
+
+    public boolean hasChanged(Property property) {
+        return properties.contains(property);
+    }
+
+    public boolean hasChangedHostmasks() {
+        return hostmasksChanged;
+    }
+
+    public boolean isEmpty() {
+        return properties.isEmpty() && addedChannels.isEmpty() && removedChannels.isEmpty() && permissionKeys.isEmpty() && !hostmasksChanged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("properties=%s, joined=%s, parted=%s, permissions=%s, hostmasks=%b", properties, addedChannels, removedChannels, permissionKeys, hostmasksChanged);
+    }
+
+    protected void addChannel(String channel) {
+        addedChannels.add(channel);
+    }
+
+    protected void addPermissionKey(String key) {
+        permissionKeys.add(key);
+    }
+
+    protected void addProperty(Property property) {
+        properties.add(property);
+    }
+
+    protected void removeChannel(String channel) {
+        removedChannels.add(channel);
+    }
+
+    protected void setHostmasksChanged(boolean hostmasksChanged) {
+        this.hostmasksChanged = hostmasksChanged;
+    }
+}
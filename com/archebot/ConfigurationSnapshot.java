@@ -0,0 +1,143 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable copy of a configuration's property values, with defaults already applied and each value already
+ * converted to the type it is read as. A new snapshot is published whenever a property changes, so threads can keep
+ * reading the current one without locking. The properties read for every line are also kept in plain fields, and the
+ * input, output and error trace flags are only true while logging itself is enabled.
+ */
+public final class ConfigurationSnapshot {
+
+    private final EnumMap<Property, Object> values = new EnumMap<>(Property.class);
+    private final EnumMap<Property, String> strings = new EnumMap<>(Property.class);
+    private final EnumMap<Property, Boolean> booleans = new EnumMap<>(Property.class);
+    private final EnumMap<Property, Integer> integers = new EnumMap<>(Property.class);
+    private final int cycleDelay;
+    private final int lineLength;
+    private final int messageDelay;
+    private final String prefix;
+    private final LogLevel logLevel;
+    private final boolean commandsEnabled;
+    private final boolean formattingEnabled;
+    private final boolean loggingEnabled;
+    private final boolean loggingErrorTrace;
+    private final boolean loggingInput;
+    private final boolean loggingOutput;
+    private final boolean nickPrefixEnabled;
+    private final boolean quoteSplitEnabled;
+    private final boolean removingTrailingSpaces;
+
+    ConfigurationSnapshot(Map<Property, Object> set) {
+        for (Property property : Property.values()) {
+            Object value = set.containsKey(property) ? set.get(property) : property.getDefaultValue();
+            Object fallback = property.getDefaultValue();
+            values.put(property, value);
+            strings.put(property, value == null ? null : value.toString());
+            booleans.put(property, value instanceof Boolean ? (Boolean) value : fallback instanceof Boolean && (Boolean) fallback);
+            integers.put(property, value instanceof Integer ? (Integer) value : fallback instanceof Integer ? (Integer) fallback : 0);
+        }
+        cycleDelay = integers.get(Property.cycleDelay);
+        lineLength = integers.get(Property.lineLength);
+        messageDelay = integers.get(Property.messageDelay);
+        prefix = strings.get(Property.prefix);
+        String level = strings.get(Property.logLevel);
+        logLevel = LogLevel.isValue(level) ? LogLevel.valueOf(level.toLowerCase(Locale.ROOT)) : LogLevel.info;
+        commandsEnabled = booleans.get(Property.enableCommands);
+        formattingEnabled = booleans.get(Property.enableFormatting);
+        loggingEnabled = booleans.get(Property.enableLogging);
+        loggingErrorTrace = loggingEnabled && booleans.get(Property.logErrorTrace);
+        loggingInput = loggingEnabled && booleans.get(Property.logInput);
+        loggingOutput = loggingEnabled && booleans.get(Property.logOutput);
+        nickPrefixEnabled = booleans.get(Property.enableNickPrefix);
+        quoteSplitEnabled = booleans.get(Property.enableQuoteSplit);
+        removingTrailingSpaces = booleans.get(Property.removeTrailingSpaces);
+    }
+
+    public boolean getBoolean(Property property) {
+        return booleans.get(property);
+    }
+
+    public int getCycleDelay() {
+        return cycleDelay;
+    }
+
+    public int getInteger(Property property) {
+        return integers.get(property);
+    }
+
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    public int getMessageDelay() {
+        return messageDelay;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getString(Property property) {
+        return strings.get(property);
+    }
+
+    public Object getValue(Property property) {
+        return values.get(property);
+    }
+
+    public boolean isCommandsEnabled() {
+        return commandsEnabled;
+    }
+
+    public boolean isFormattingEnabled() {
+        return formattingEnabled;
+    }
+
+    public boolean isLogging(LogLevel level) {
+        return loggingEnabled && level.compareTo(logLevel) >= 0;
+    }
+
+    public boolean isLoggingEnabled() {
+        return loggingEnabled;
+    }
+
+    public boolean isLoggingErrorTrace() {
+        return loggingErrorTrace;
+    }
+
+    public boolean isLoggingInput() {
+        return loggingInput;
+    }
+
+    public boolean isLoggingOutput() {
+        return loggingOutput;
+    }
+
+    public boolean isNickPrefixEnabled() {
+        return nickPrefixEnabled;
+    }
+
+    public boolean isQuoteSplitEnabled() {
+        return quoteSplitEnabled;
+    }
+
+    public boolean isRemovingTrailingSpaces() {
+        return removingTrailingSpaces;
+    }
+}
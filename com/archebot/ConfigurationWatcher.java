@@ -0,0 +1,73 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directory of a bot's configuration and reloads the configuration when its file changes. Events are
+ * debounced so an editor writing the file in several steps causes a single reload, and the reload itself runs on the
+ * connection's handler thread. Files written by the configuration itself are recognised by their modification time
+ * and size and don't cause a reload.
+ */
+final class ConfigurationWatcher extends Thread {
+
+    private static final long DEBOUNCE = 250;
+    private final ArcheBot bot;
+    private final WatchService service;
+    private final File file;
+    private volatile boolean active = true;
+
+    ConfigurationWatcher(ArcheBot bot) throws IOException {
+        super("Configuration Watcher [" + bot.getConfiguration().getName() + "]");
+        this.bot = bot;
+        Configuration configuration = bot.getConfiguration();
+        String directory = configuration.getDirectory();
+        file = new File(directory.isEmpty() ? "." : directory, configuration.getName() + ".pml");
+        Path path = file.getAbsoluteFile().getParentFile().toPath();
+        service = path.getFileSystem().newWatchService();
+        path.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        setDaemon(true);
+    }
+
+    void close() {
+        active = false;
+        try {
+            service.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (active) {
+                WatchKey key = service.take();
+                boolean changed = isChanged(key);
+                WatchKey next;
+                while ((next = service.poll(DEBOUNCE, TimeUnit.MILLISECONDS)) != null)
+                    changed |= isChanged(next);
+                if (changed && active && !bot.getConfiguration().isWritten(file))
+                    bot.scheduleReload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {}
+        bot.log(getName() + " terminated.");
+    }
+
+    private boolean isChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents())
+            if (event.context() instanceof Path && event.context().toString().equals(file.getName()))
+                changed = true;
+        key.reset();
+        return changed;
+    }
+}
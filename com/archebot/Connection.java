@@ -8,41 +8,78 @@
  */
 package com.archebot;
 
+import com.archebot.utilities.Formatting;
 import com.archebot.utilities.Queue;
 import com.archebot.utilities.StringUtils;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unchecked")
 final class Connection {
 
+    private static final String[] CAPABILITIES = {"account-notify", "batch", "extended-join", "labeled-response", "multi-prefix", "userhost-in-names"};
     private final ArcheBot bot;
     private final Socket socket;
     private final BufferedWriter writer;
     private final BufferedReader reader;
     private final Queue<String> outgoing = new Queue<>();
     private final Queue<String> incoming = new Queue<>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<String> capabilities = Collections.synchronizedSet(new HashSet<>());
+    private final HashSet<String> offeredCapabilities = new HashSet<>();
+    private final HashMap<String, String> batches = new HashMap<>();
+    private final Queries queries;
+    private final Synchronizer synchronizer;
+    private final WhoisCache whoisCache;
+    private final Netsplits netsplits;
+    private final TrafficJournal traffic;
     private boolean active = false;
+    private long time = System.currentTimeMillis();
     private HandlerThread handler;
 
     Connection(ArcheBot bot) throws IOException {
+        this(bot, open(bot), null);
+        handler = new HandlerThread();
+        handler.start();
+        new OutputThread().start();
+        new InputThread().start();
+    }
+
+    /**
+     * Creates a connection without a server for replaying recorded traffic. No threads are started; lines are handled
+     * through replay, and everything the bot sends is written to the output instead.
+     */
+    Connection(ArcheBot bot, Writer output) throws IOException {
+        this(bot, null, output);
+    }
+
+    private Connection(ArcheBot bot, Socket socket, Writer output) throws IOException {
         this.bot = bot;
+        this.socket = socket;
+        queries = new Queries(bot);
+        synchronizer = new Synchronizer(bot, this, queries);
+        whoisCache = new WhoisCache(bot);
+        netsplits = new Netsplits(bot, this, synchronizer, whoisCache);
         Configuration configuration = bot.getConfiguration();
-
-        String server = configuration.getString(Property.server);
         String password = configuration.getString(Property.password);
-        int port = configuration.getInteger(Property.port);
-
-        bot.log("Attempting to connect to %s on port %d...", server, port);
-        socket = new Socket(server, port);
-        bot.log("Connection successful!");
         bot.setState(State.connecting);
         active = true;
 
-        socket.setSoTimeout(configuration.getInteger(Property.timeoutDelay));
-        writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        if (socket != null) {
+            socket.setSoTimeout(configuration.getInteger(Property.timeoutDelay));
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            traffic = configuration.getBoolean(Property.recordTraffic) ? openTraffic(configuration) : null;
+        } else {
+            writer = new BufferedWriter(output);
+            reader = null;
+            traffic = null;
+        }
 
         String nick = configuration.getString(Property.nick);
         String login = configuration.getString(Property.login);
@@ -50,6 +87,7 @@ final class Connection {
         String realname = configuration.getString(Property.realname);
         if (!password.isEmpty())
             send("PASS " + password);
+        send("CAP LS 302");
         send("NICK " + nick);
         send(String.format("USER %s %d * :%s", login, visible ? 0 : 8, realname));
         if (!bot.getNick().equals(nick)) {
@@ -59,13 +97,32 @@ final class Connection {
             configuration.loadPermissions(bot);
             users.addUser(bot);
         }
-        handler = new HandlerThread();
-        handler.start();
-        new OutputThread().start();
-        new InputThread().start();
+    }
+
+    void applyChange(ConfigurationChange change) {
+        Configuration configuration = bot.getConfiguration();
+        if (socket != null && change.hasChanged(Property.timeoutDelay))
+            try {
+                socket.setSoTimeout(configuration.getInteger(Property.timeoutDelay));
+            } catch (IOException e) {
+                bot.logError("[Connection::applyChange] An internal exception has occurred (%s)", e.getMessage());
+            }
+        if (bot.isConnected()) {
+            change.getAddedChannels().forEach(c -> queue("JOIN " + c));
+            change.getRemovedChannels().forEach(c -> queue("PART " + c));
+            String nick = configuration.getString(Property.nick);
+            if (change.hasChanged(Property.nick) && !bot.getNick().equals(nick))
+                queue("NICK " + nick);
+        }
+    }
+
+    CompletableFuture<TreeSet<String>> banListAsync(String channel) {
+        return queries.bans(channel);
     }
 
     void breakThread() {
+        if (handler == null)
+            return;
         handler.current = false;
         handler = new HandlerThread();
         handler.start();
@@ -73,46 +130,135 @@ final class Connection {
 
     void close() {
         active = false;
+        queries.cancel();
+        whoisCache.cancel();
+        if (traffic != null)
+            traffic.close();
         try {
-            socket.close();
-            reader.close();
+            if (socket != null) {
+                socket.close();
+                reader.close();
+            }
             writer.close();
         } catch (IOException e) {
             bot.logError("[Connection::close] An internal exception has occurred (%s)", e.getMessage());
         }
     }
 
+    void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * The time the line being handled arrived, in milliseconds. While replaying this follows the recording's timing
+     * rather than the clock.
+     */
+    long getTime() {
+        return time;
+    }
+
+    boolean hasCapability(String capability) {
+        return capabilities.contains(capability.toLowerCase());
+    }
+
+    CompletableFuture<TreeSet<ListResult>> listAsync() {
+        return queries.list();
+    }
+
     synchronized void queue(String line) {
         if (line != null && !line.isEmpty())
             outgoing.add(line);
     }
 
-    synchronized void send(String line) {
+    /**
+     * Applies a change to a user's nick or account. If that moves the key its permissions are stored under, the grants
+     * are saved under the old key and replaced with the ones stored under the new key.
+     */
+    void rekey(User user, Runnable change) {
+        String key = user.getPermissionKey();
+        change.run();
+        if (key.equals(user.getPermissionKey()))
+            return;
         Configuration configuration = bot.getConfiguration();
+        configuration.storePermissions(user, key);
+        user.clearPermissions();
+        user.setPermissionsChanged(false);
+        configuration.loadPermissions(user);
+    }
+
+    /**
+     * Handles a recorded line as if it had just arrived, given how many nanoseconds after the previous line it was
+     * recorded, or -1 when that isn't known. The periodic work is done first whenever the gap is at least a cycle long
+     * or unknown, and an unknown gap counts as long enough for collected netsplits to be applied.
+     */
+    void replay(String line, long gap) {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+            task.run();
+        time += gap < 0 ? Netsplits.QUIET_PERIOD : TimeUnit.NANOSECONDS.toMillis(gap);
+        if (gap < 0 || gap >= TimeUnit.MILLISECONDS.toNanos(bot.getConfiguration().getSnapshot().getCycleDelay()))
+            idle();
+        if (!line.isEmpty())
+            handle(line);
+        while (bot.isConnected() && outgoing.hasNext())
+            send(outgoing.getNext());
+    }
+
+    synchronized void send(String line) {
+        ConfigurationSnapshot configuration = bot.getConfiguration().getSnapshot();
         if (line != null && !line.isEmpty()) {
-            int size = configuration.getInteger(Property.lineLength);
+            int size = configuration.getLineLength();
             if (line.length() > size)
                 line = line.substring(0, size);
             try {
-                if (configuration.getBoolean(Property.enableFormatting))
-                    line = line.replace("\\&", "\0")
-                            .replace("&r", "\17")
-                            .replace("&b", "\2")
-                            .replace("&", "\3")
-                            .replace("\0", "&");
+                if (configuration.isFormattingEnabled())
+                    line = Formatting.encode(line);
                 writer.write(line);
                 writer.newLine();
                 writer.flush();
-                if (configuration.getBoolean(Property.logOutput))
-                    bot.logOutput(line.replaceAll("\\002|\\003\\d\\d?(,\\d\\d?)?|\\017", ""));
+                if (traffic != null)
+                    traffic.write(TrafficJournal.OUTBOUND, line);
+                if (configuration.isLoggingOutput())
+                    bot.logOutput(Formatting.strip(line));
             } catch (IOException e) {
                 bot.logError("[Connection::send] An internal exception has occurred (%s)", e.getMessage());
             }
         }
     }
 
+    CompletableFuture<TreeSet<User>> whoAsync(String mask) {
+        return queries.who(mask);
+    }
+
+    void whois(User user) {
+        WhoisResult result = whoisCache.get(user.getNick());
+        if (result != null)
+            execute(() -> {
+                rekey(user, () -> result.apply(user));
+                bot.getHandler().onWhois(bot, user);
+            });
+        else if (whoisCache.request(user.getNick()))
+            queue("WHOIS " + user.getNick());
+    }
+
+    CompletableFuture<WhoisResult> whoisAsync(String nick) {
+        WhoisResult result = whoisCache.get(nick);
+        if (result != null)
+            return CompletableFuture.completedFuture(result);
+        CompletableFuture<WhoisResult> future = whoisCache.await(nick);
+        if (whoisCache.request(nick))
+            queue("WHOIS " + nick);
+        return future;
+    }
+
     private void handle(String line) {
         Configuration configuration = bot.getConfiguration();
+        HashMap<String, String> tags = new HashMap<>();
+        if (line.charAt(0) == '@') {
+            tags = parseTags(line.substring(1, line.indexOf(' ')));
+            line = line.substring(line.indexOf(' ') + 1);
+        }
+        String label = tags.containsKey("label") ? tags.get("label") : batches.get(tags.get("batch"));
         String[] parts = line.split(" :", 2);
         String[] lineArgs = parts[0].split(" ");
         String tail = parts.length > 1 ? parts[1] : "";
@@ -130,10 +276,17 @@ final class Connection {
             args = new String[lineArgs.length - 1];
             System.arraycopy(lineArgs, 1, args, 0, args.length);
         }
+        String batch = tags.get("batch");
+        if (netsplits.isPending(source))
+            netsplits.flush();
         switch (command.toUpperCase()) {
+            case "ACCOUNT": onAccount(source, args, tail); break;
+            case "ACK": onAck(label); break;
+            case "BATCH": onBatch(label, args); break;
+            case "CAP": onCap(args, tail); break;
             case "ERROR": onError(tail); return;
             case "INVITE": onInvite(source, args, tail); break;
-            case "JOIN": onJoin(source, args, tail); break;
+            case "JOIN": onJoin(source, args, tail, batch); break;
             case "KICK": onKick(source, args, tail); break;
             case "MODE": onMode(source, args, tail); break;
             case "NICK": onNick(source, args, tail); break;
@@ -142,7 +295,7 @@ final class Connection {
             case "PING": onPing(tail); break;
             case "PONG": onPong(args, tail); break;
             case "PRIVMSG": onPrivmsg(source, args, tail); break;
-            case "QUIT": onQuit(source, tail); break;
+            case "QUIT": onQuit(source, tail, batch); break;
             case "TOPIC": onTopic(source, args, tail); break;
             case "001": on001(); break;
             case "004": on004(args); break;
@@ -150,17 +303,25 @@ final class Connection {
             case "105": on005(source.getNick(), args); break;
             case "311": on311(args, tail); break;
             case "312": on312(args, tail); break;
+            case "315": on315(label, args); break;
             case "318": on318(args); break;
-            case "322": on322(args); break;
+            case "322": on322(label, args, tail); break;
+            case "323": on323(label); break;
             case "324": on324(args); break;
             case "330": on330(args); break;
             case "332": on332(args, tail); break;
             case "333": on333(args); break;
             case "351": on351(args); break;
             case "352": on352(args, tail); break;
+            case "353": on353(args, tail); break;
+            case "354": on354(args, tail); break;
+            case "366": on366(args); break;
+            case "367": on367(label, args); break;
+            case "368": on368(label, args); break;
             case "372": on372(source.getNick(), tail); break;
             case "375": on375(source.getNick()); break;
             case "376": on376(source.getNick()); break;
+            case "401": on401(args); break;
             case "433":
             case "436":
             case "437":
@@ -179,7 +340,8 @@ final class Connection {
                 }
                 break;
             default:
-                if (bot.getState() == State.connecting && command.matches("[45]\\d\\d")) {
+                boolean capability = command.matches("410|421|451") && args.length > 1 && args[1].equalsIgnoreCase("CAP");
+                if (!capability && bot.getState() == State.connecting && command.matches("[45]\\d\\d")) {
                     bot.shutdown("An error occurred during connection: " + tail);
                     return;
                 }
@@ -190,6 +352,73 @@ final class Connection {
             bot.getHandler().onLine(bot, source, command, args, tail);
     }
 
+    private void idle() {
+        netsplits.idle();
+        netsplits.expire();
+        synchronizer.flush();
+        queries.expire();
+        whoisCache.expire();
+    }
+
+    private void onAccount(User source, String[] args, String tail) {
+        String account = args.length == 0 ? tail : args[0];
+        rekey(source, () -> source.setNickservLogin(account.equals("*") ? null : account));
+        whoisCache.invalidate(source.getNick());
+    }
+
+    private void onAck(String label) {
+        queries.complete(label, null);
+    }
+
+    private void onBatch(String label, String[] args) {
+        String reference = args[0].substring(1);
+        if (args[0].charAt(0) == '+') {
+            if (label != null)
+                batches.put(reference, label);
+            if (args.length >= 4 && (args[1].equalsIgnoreCase("netsplit") || args[1].equalsIgnoreCase("netjoin")))
+                netsplits.open(reference, args[1], args[2] + " " + args[3]);
+        } else if (batches.containsKey(reference))
+            queries.complete(batches.remove(reference), null);
+        else
+            netsplits.close(reference);
+    }
+
+    private void onCap(String[] args, String tail) {
+        switch (args[1].toUpperCase()) {
+            case "LS":
+                for (String capability : tail.split(" "))
+                    offeredCapabilities.add(capability.split("=", 2)[0].toLowerCase());
+                if (args.length < 3 || !args[2].equals("*")) {
+                    ArrayList<String> requested = new ArrayList<>();
+                    for (String capability : CAPABILITIES)
+                        if (offeredCapabilities.contains(capability))
+                            requested.add(capability);
+                    if (requested.isEmpty())
+                        send("CAP END");
+                    else
+                        send("CAP REQ :" + StringUtils.compact(requested, " "));
+                }
+                break;
+            case "ACK":
+                for (String capability : tail.split(" "))
+                    if (capability.startsWith("-"))
+                        capabilities.remove(capability.substring(1).toLowerCase());
+                    else if (!capability.isEmpty())
+                        capabilities.add(capability.toLowerCase());
+                if (bot.getState() == State.connecting)
+                    send("CAP END");
+                break;
+            case "NAK":
+                if (bot.getState() == State.connecting)
+                    send("CAP END");
+                break;
+            case "DEL":
+                for (String capability : tail.split(" "))
+                    capabilities.remove(capability.toLowerCase());
+                break;
+        }
+    }
+
     private void onError(String tail) {
         bot.shutdown(tail);
     }
@@ -199,17 +428,22 @@ final class Connection {
         bot.getHandler().onInvite(bot, channel, source);
     }
 
-    private void onJoin(User source, String[] args, String tail) {
+    private void onJoin(User source, String[] args, String tail, String batch) {
         Channel channel = bot.getChannel(args.length == 0 ? tail : args[0]);
+        if (args.length > 1) {
+            rekey(source, () -> source.setNickservLogin(args[1].equals("*") ? null : args[1]));
+            source.setRealname(tail);
+        }
+        if (netsplits.join(source, channel, batch))
+            return;
         channel.addUser(source);
         if (source == bot) {
-            bot.send("WHO " + channel.getName());
-            bot.send("MODE " + channel.getName());
+            synchronizer.synchronize(channel, true);
             Configuration configuration = bot.getConfiguration();
             if (configuration.getBoolean(Property.updateChannels))
                 configuration.addChannel(channel.getName());
         } else
-            source.whois();
+            synchronizer.update(channel, source);
         source.setKnown(true);
         bot.getHandler().onJoin(bot, channel, source);
     }
@@ -222,12 +456,14 @@ final class Connection {
         channel.removeUser(user);
         if (user == bot) {
             channels.removeChannel(args[0]);
+            synchronizer.forget(channel);
             channel.getUsers(u -> channels.size(c -> c.contains(u)) == 0).forEach(u -> {
+                bot.getConfiguration().storePermissions(u);
                 users.removeUser(u.getNick());
                 u.setKnown(false);
             });
-        } else if (channels.size(c -> c.contains(source)) == 0) {
-            bot.getConfiguration().storePermissions(source);
+        } else if (channels.size(c -> c.contains(user)) == 0) {
+            bot.getConfiguration().storePermissions(user);
             users.removeUser(user.getNick());
             user.setKnown(false);
         }
@@ -235,59 +471,68 @@ final class Connection {
     }
 
     private void onMode(User source, String[] args, String tail) {
+        String[] params = args;
         if (!tail.isEmpty()) {
-            boolean added = tail.charAt(0) == '+';
-            for (char mode : tail.substring(1).toCharArray()) {
-                if (added) {
+            params = Arrays.copyOf(args, args.length + 1);
+            params[args.length] = tail;
+        }
+        Server server = bot.getServer();
+        if (server == null || !server.isChannel(params[0])) {
+            boolean added = true;
+            for (char mode : params[1].toCharArray())
+                if (mode == '+' || mode == '-')
+                    added = mode == '+';
+                else if (added) {
                     source.addMode(mode);
                     bot.getHandler().onModeAdded(bot, source, mode);
                 } else {
                     source.removeMode(mode);
                     bot.getHandler().onModeRemoved(bot, source, mode);
                 }
+            return;
+        }
+        Channel channel = bot.getChannel(params[0]);
+        ArrayList<ModeChange> changes = new ArrayList<>(params[1].length());
+        boolean added = true;
+        int i = 2;
+        for (char mode : params[1].toCharArray()) {
+            if (mode == '+' || mode == '-') {
+                added = mode == '+';
+                continue;
             }
-        } else {
-            Channel channel = bot.getChannel(args[0]);
-            boolean added = args[1].charAt(0) == '+';
-            int i = 2;
-            for (char mode : args[1].substring(1).toCharArray()) {
-                String value = args.length >= i + 1 ? args[i++] : "";
-                ModeType type = bot.getServer().getModeType(mode);
-                if (type == ModeType.status) {
-                    User user = bot.getUser(value);
-                    if (added) {
-                        channel.modeAdd(user, mode);
-                        bot.getHandler().onModeAdded(bot, channel, source, user, mode);
-                    } else {
-                        channel.modeRemove(user, mode);
-                        bot.getHandler().onModeRemoved(bot, channel, source, user, mode);
-                    }
-                } else if (added) {
-                    if (type == ModeType.list)
-                        channel.addListMode(mode, value);
-                    else
-                        channel.modeAdd(mode, value);
-                    bot.getHandler().onModeAdded(bot, channel, source, mode, value);
-                } else {
-                    if (type == ModeType.list)
-                        channel.removeListMode(mode, value);
-                    else
-                        channel.modeRemove(mode);
-                    bot.getHandler().onModeRemoved(bot, channel, source, mode);
-                }
-            }
+            ModeType type = server.supportsMode(mode) ? server.getModeType(mode) : ModeType.unknown;
+            boolean valued = type == ModeType.status || type == ModeType.list
+                    || type == ModeType.value && (added || server.isRemovalValueMode(mode));
+            String value = valued && i < params.length ? params[i++] : "";
+            User user = null;
+            if (type == ModeType.status) {
+                user = bot.getUser(value);
+                if (added)
+                    channel.modeAdd(user, mode);
+                else
+                    channel.modeRemove(user, mode);
+            } else if (type == ModeType.list) {
+                if (added)
+                    channel.addListMode(mode, value);
+                else
+                    channel.removeListMode(mode, value);
+            } else if (added)
+                channel.modeAdd(mode, value);
+            else
+                channel.modeRemove(mode);
+            changes.add(new ModeChange(added, mode, value, type, user));
         }
+        bot.getHandler().onModesChanged(bot, channel, source, changes);
     }
 
     private void onNick(User source, String[] args, String tail) {
         Configuration configuration = bot.getConfiguration();
         UserMap users = bot.getUserMap();
         String oldNick = source.getNick();
-        configuration.clearPermissions(oldNick);
-        configuration.storePermissions(source);
         users.removeUser(oldNick);
-        source.setNick(args.length == 0 ? tail : args[0]);
-        configuration.loadPermissions(source);
+        rekey(source, () -> source.setNick(args.length == 0 ? tail : args[0]));
+        whoisCache.invalidate(oldNick);
+        whoisCache.invalidate(source.getNick());
         users.addUser(source);
         if (source == bot && configuration.getBoolean(Property.updateNick))
             configuration.setValue(Property.nick, source.getNick());
@@ -309,6 +554,7 @@ final class Connection {
         channel.removeUser(source);
         if (source == bot) {
             channels.removeChannel(args[0]);
+            synchronizer.forget(channel);
             channel.getUsers(u -> channels.size(c -> c.contains(u)) == 0).forEach(u -> {
                 configuration.storePermissions(u);
                 users.removeUser(u.getNick());
@@ -338,7 +584,7 @@ final class Connection {
     }
 
     private void onPrivmsg(User source, String[] args, String tail) {
-        Configuration configuration = bot.getConfiguration();
+        ConfigurationSnapshot configuration = bot.getConfiguration().getSnapshot();
         if (tail.matches("^\\001[A-Z]+.*\\001$")) {
             String[] parts = tail.substring(1, tail.length() - 1).split(" ", 2);
             String s = parts.length > 1 ? parts[1] : "";
@@ -354,11 +600,11 @@ final class Connection {
             return;
         }
 
-        if (configuration.getBoolean(Property.enableCommands) && (source.hasPermission(Permission.OPERATOR) || !source.hasPermission(Permission.IGNORE))) {
-            String prefix = configuration.getString(Property.prefix);
+        if (configuration.isCommandsEnabled() && (source.hasPermission(Permission.OPERATOR) || !source.hasPermission(Permission.IGNORE))) {
+            String prefix = configuration.getPrefix();
             if (!prefix.isEmpty() && tail.startsWith(prefix))
                 onPrivmsgCommand(source, args, prefix, tail);
-            else if (configuration.getBoolean(Property.enableNickPrefix)) {
+            else if (configuration.isNickPrefixEnabled()) {
                 String nick = bot.getNick();
                 if (tail.startsWith(nick + " "))
                     onPrivmsgCommand(source, args, nick, tail);
@@ -376,11 +622,11 @@ final class Connection {
     }
 
     private void onPrivmsgCommand(User source, String[] args, String prefix, String tail) {
-        Configuration configuration = bot.getConfiguration();
+        ConfigurationSnapshot configuration = bot.getConfiguration().getSnapshot();
         tail = tail.substring(prefix.length());
         if (tail.startsWith(" "))
             tail = tail.substring(1);
-        if (configuration.getBoolean(Property.removeTrailingSpaces))
+        if (configuration.isRemovingTrailingSpaces())
             tail = tail.replaceAll(" +$", "");
         else if (tail.endsWith(" ") || tail.endsWith("\"\""))
             tail += " ";
@@ -388,7 +634,7 @@ final class Connection {
         String[] cmdArgs;
         if (parts.length == 1)
             cmdArgs = new String[0];
-        else if (configuration.getBoolean(Property.enableQuoteSplit))
+        else if (configuration.isQuoteSplitEnabled())
             cmdArgs = StringUtils.splitArgs(parts[1]);
         else
             cmdArgs = parts[1].split(" ");
@@ -404,12 +650,16 @@ final class Connection {
             bot.getHandler().onUnknownCommand(bot, bot.getChannel(args[0]), source, parts[0], cmdArgs);
     }
 
-    private void onQuit(User source, String tail) {
-        bot.getChannelMap().getChannels(c -> c.contains(source)).forEach(c -> c.removeUser(source));
+    private void onQuit(User source, String tail, String batch) {
+        if (netsplits.quit(source, tail, batch))
+            return;
+        for (Channel channel : bot.getChannelMap())
+            channel.removeUser(source);
         if (source != bot) {
             bot.getConfiguration().storePermissions(source);
             bot.getUserMap().removeUser(source.getNick());
         }
+        whoisCache.invalidate(source.getNick());
         source.setKnown(false);
         bot.getHandler().onQuit(bot, source, tail);
     }
@@ -460,10 +710,13 @@ final class Connection {
                 server.addMode(mode, ModeType.list);
             for (int i = 1; i < modeBlocks.length; i++)
                 for (char mode : modeBlocks[i].toCharArray())
-                    if (server.isValueMode(mode))
+                    if (i < 3 || server.isValueMode(mode))
                         server.addMode(mode, ModeType.value);
                     else
                         server.addMode(mode, ModeType.valueless);
+            if (modeBlocks.length > 1)
+                for (char mode : modeBlocks[1].toCharArray())
+                    server.addRemovalValueMode(mode);
         }
         if (server.isDataType("PREFIX")) {
             String[] prefixSplit = server.getData("PREFIX").split("\\)");
@@ -480,24 +733,46 @@ final class Connection {
 
     private void on311(String[] args, String tail) {
         User user = bot.getUser(args[1]);
+        WhoisResult result = whoisCache.receive(args[1]);
         user.setLogin(args[2]);
         user.setHostmask(args[3]);
         user.setRealname(tail);
+        user.setUpdateTime(System.currentTimeMillis());
+        result.setLogin(args[2]);
+        result.setHostmask(args[3]);
+        result.setRealname(tail);
     }
 
     private void on312(String[] args, String tail) {
         Server server = bot.getServer(args[2]);
         bot.getUser(args[1]).setServer(server);
         server.setDescription(tail);
+        whoisCache.receive(args[1]).setServer(server);
+    }
+
+    private void on315(String label, String[] args) {
+        synchronizer.applyWho(label, args[1]);
+        queries.complete(label, "who " + bot.fold(args[1]));
     }
 
     private void on318(String[] args) {
+        whoisCache.complete(args[1]);
         bot.getHandler().onWhois(bot, bot.getUser(args[1]));
     }
 
-    private void on322(String[] args) {
-        if (bot.getChannel(args[1]).size() != Integer.parseInt(args[2]))
-            bot.send("WHO " + args[1]);
+    private void on322(String label, String[] args, String tail) {
+        ChannelMap channels = bot.getChannelMap();
+        int size = Integer.parseInt(args[2]);
+        if (channels.contains(args[1])) {
+            Channel channel = channels.getChannel(args[1]);
+            if (channel.contains(bot) && channel.size() != size)
+                synchronizer.synchronize(channel, false);
+        }
+        queries.addList(label, new ListResult(args[1], size, tail));
+    }
+
+    private void on323(String label) {
+        queries.complete(label, "list");
     }
 
     private void on324(String[] args) {
@@ -507,7 +782,9 @@ final class Connection {
     }
 
     private void on330(String[] args) {
-        bot.getUser(args[1]).setNickservLogin(args[2]);
+        User user = bot.getUser(args[1]);
+        rekey(user, () -> user.setNickservLogin(args[2]));
+        whoisCache.receive(args[1]).setNickservLogin(args[2]);
     }
 
     private void on332(String[] args, String tail) {
@@ -525,18 +802,28 @@ final class Connection {
     }
 
     private void on352(String[] args, String tail) {
-        Channel channel = bot.getChannel(args[1]);
-        User user = bot.getUser(args[5]);
-        user.setLogin(args[2]);
-        user.setHostmask(args[3]);
-        user.setRealname(tail.substring(2));
-        user.setServer(bot.getServer(args[4]));
-        user.setKnown(true);
-        if (!channel.contains(user))
-            channel.addUser(user);
-        for (char prefix : args[6].toCharArray())
-            if (bot.getServer().supportsPrefix(prefix))
-                channel.modeAdd(user, bot.getServer().getMode(prefix));
+        synchronizer.receiveWho(args[1], args[5], args[2], args[3], args[4], args[6], null, tail.substring(tail.indexOf(' ') + 1));
+    }
+
+    private void on353(String[] args, String tail) {
+        synchronizer.receiveNames(args[2], tail);
+    }
+
+    private void on354(String[] args, String tail) {
+        if (args.length >= 8 && args[1].equals(Queries.WHOX_TOKEN))
+            synchronizer.receiveWho(args[2], args[5], args[3], args[4], null, args[6], args[7], tail);
+    }
+
+    private void on366(String[] args) {
+        synchronizer.applyNames(args[1]);
+    }
+
+    private void on367(String label, String[] args) {
+        queries.addBan(label, args[1], args[2]);
+    }
+
+    private void on368(String label, String[] args) {
+        queries.complete(label, "bans " + bot.fold(args[1]));
     }
 
     private void on372(String source, String tail) {
@@ -551,6 +838,54 @@ final class Connection {
         bot.getHandler().onMOTD(bot, bot.getServer(source));
     }
 
+    private void on401(String[] args) {
+        whoisCache.fail(args[1]);
+    }
+
+    private TrafficJournal openTraffic(Configuration configuration) {
+        String directory = configuration.isSavable() ? configuration.getDirectory() : "";
+        try {
+            return new TrafficJournal(directory + configuration.getName());
+        } catch (IOException e) {
+            bot.logError("[Connection::openTraffic] Unable to open the traffic journal (%s)", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Socket open(ArcheBot bot) throws IOException {
+        Configuration configuration = bot.getConfiguration();
+        String server = configuration.getString(Property.server);
+        int port = configuration.getInteger(Property.port);
+        bot.log("Attempting to connect to %s on port %d...", server, port);
+        Socket socket = new Socket(server, port);
+        bot.log("Connection successful!");
+        return socket;
+    }
+
+    private static HashMap<String, String> parseTags(String line) {
+        HashMap<String, String> tags = new HashMap<>();
+        for (String tag : line.split(";")) {
+            String[] parts = tag.split("=", 2);
+            String value = parts.length > 1 ? parts[1] : "";
+            StringBuilder builder = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c != '\\')
+                    builder.append(c);
+                else if (++i < value.length())
+                    switch (value.charAt(i)) {
+                        case ':': builder.append(';'); break;
+                        case 's': builder.append(' '); break;
+                        case 'r': builder.append('\r'); break;
+                        case 'n': builder.append('\n'); break;
+                        default: builder.append(value.charAt(i));
+                    }
+            }
+            tags.put(parts[0], builder.toString());
+        }
+        return tags;
+    }
+
     private final class HandlerThread extends Thread {
 
         private boolean current = false;
@@ -562,18 +897,23 @@ final class Connection {
         @Override
         public void run() {
             current = true;
-            int cycleDelay = bot.getConfiguration().getInteger(Property.cycleDelay);
             while (active && current) {
                 try {
-                    if (incoming.size() > 0)
+                    time = System.currentTimeMillis();
+                    Runnable task = tasks.poll();
+                    if (task != null)
+                        task.run();
+                    else if (incoming.size() > 0)
                         handle(incoming.getNext());
-                    else
-                        Thread.sleep(cycleDelay);
+                    else {
+                        idle();
+                        Thread.sleep(bot.getConfiguration().getSnapshot().getCycleDelay());
+                    }
                 } catch (InterruptedException e) {
                     bot.logError("[Connection::HandlerThread:run] An internal exception has occurred (%s)", e.getMessage());
                 } catch (Exception e) {
                     bot.logError("A handling exception has occurred (%s). The bot should continue functioning without major problems.", e.toString());
-                    if (bot.getConfiguration().getBoolean(Property.logErrorTrace))
+                    if (bot.getConfiguration().getSnapshot().isLoggingErrorTrace())
                         for (StackTraceElement element : e.getStackTrace())
                             bot.logTrace(element.toString());
                 }
@@ -593,9 +933,11 @@ final class Connection {
             String line;
             try {
                 while (active && (line = reader.readLine()) != null) {
+                    if (traffic != null)
+                        traffic.write(TrafficJournal.INBOUND, line);
                     incoming.add(line);
-                    if (bot.getConfiguration().getBoolean(Property.logInput))
-                        bot.logInput(line.replaceAll("\\002|\\003\\d+(,\\d+)?|\\017", ""));
+                    if (bot.getConfiguration().getSnapshot().isLoggingInput())
+                        bot.logInput(Formatting.strip(line));
                 }
             } catch (IOException e) {
                 bot.logError("[Connection::InputThread:run] An internal exception has occurred (%s)", e.getMessage());
@@ -616,16 +958,15 @@ final class Connection {
         @Override
         public void run() {
             Configuration configuration = bot.getConfiguration();
-            int cycleDelay = configuration.getInteger(Property.cycleDelay);
-            int messageDelay = configuration.getInteger(Property.messageDelay);
             while (active) {
                 try {
                     if (bot.isConnected() && outgoing.hasNext()) {
                         send(outgoing.getNext());
+                        int messageDelay = configuration.getSnapshot().getMessageDelay();
                         if (messageDelay > 0)
                             Thread.sleep(messageDelay);
                     } else
-                        Thread.sleep(cycleDelay);
+                        Thread.sleep(configuration.getSnapshot().getCycleDelay());
                 } catch (InterruptedException e) {
                     bot.logError("[Connection::OutputThread:run] An internal exception has occurred (%s)", e.getMessage());
                 }
@@ -0,0 +1,173 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A permission store kept in a log structured file, for user bases too large to hold in memory. Each change appends a
+ * record holding every grant for one key, and only the offset of the latest record for each key is kept in memory, so
+ * grants are read from disk when a user is first seen. A record with no grants removes the key. Once superseded
+ * records take up more of the file than live ones, the file is compacted into a new one and atomically swapped in.
+ * Records are a single line of tab separated fields: the key, the global permissions, then one field per channel.
+ */
+public class FilePermissionStore implements PermissionStore, Closeable {
+
+    private static final int COMPACT_MINIMUM = 1 << 20;
+    private final HashMap<String, long[]> index = new HashMap<>();
+    private final File file;
+    private RandomAccessFile data;
+    private long live = 0;
+
+    public FilePermissionStore(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    public FilePermissionStore(String file) throws IOException {
+        this(new File(file));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+    }
+
+    public synchronized void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            for (long[] position : index.values())
+                out.write(read(position));
+        }
+        data.close();
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            open();
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public synchronized Map<String, Set<String>> getChannelPermissions(String key) {
+        String[] fields = getFields(key);
+        HashMap<String, Set<String>> channels = new HashMap<>();
+        for (int i = 2; i < fields.length; i++) {
+            String[] names = fields[i].split(" ");
+            channels.put(names[0], new HashSet<>(Arrays.asList(names).subList(1, names.length)));
+        }
+        return channels;
+    }
+
+    @Override
+    public synchronized Set<String> getPermissions(String key) {
+        String[] fields = getFields(key);
+        HashSet<String> permissions = new HashSet<>();
+        if (fields.length > 1 && !fields[1].isEmpty())
+            permissions.addAll(Arrays.asList(fields[1].split(" ")));
+        return permissions;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void put(String key, Set<String> permissions, Map<String, Set<String>> channelPermissions) {
+        StringBuilder builder = new StringBuilder(key);
+        boolean empty = permissions.isEmpty();
+        builder.append('\t').append(String.join(" ", permissions));
+        for (Map.Entry<String, Set<String>> entry : channelPermissions.entrySet()) {
+            if (entry.getValue().isEmpty())
+                continue;
+            builder.append('\t').append(entry.getKey()).append(' ').append(String.join(" ", entry.getValue()));
+            empty = false;
+        }
+        if (empty && !index.containsKey(key))
+            return;
+        byte[] record = (empty ? key + "\n" : builder.append('\n').toString()).getBytes(StandardCharsets.UTF_8);
+        try {
+            long offset = data.length();
+            data.seek(offset);
+            data.write(record);
+            long[] old = empty ? index.remove(key) : index.put(key, new long[]{offset, record.length});
+            if (old != null)
+                live -= old[1];
+            if (!empty)
+                live += record.length;
+            if (data.length() > COMPACT_MINIMUM && data.length() > live * 2)
+                compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException("[FilePermissionStore::put] Unable to write to " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private String[] getFields(String key) {
+        long[] position = index.get(key);
+        if (position == null)
+            return new String[0];
+        try {
+            byte[] record = read(position);
+            return new String(record, 0, record.length - 1, StandardCharsets.UTF_8).split("\t", -1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("[FilePermissionStore::getFields] Unable to read from " + file, e);
+        }
+    }
+
+    private void open() throws IOException {
+        index.clear();
+        live = 0;
+        data = new RandomAccessFile(file, "rw");
+        long offset = 0, end = 0;
+        ByteArrayOutputStream key = new ByteArrayOutputStream();
+        boolean reading = true, removal = true;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                end++;
+                if (b == '\n') {
+                    String name = new String(key.toByteArray(), StandardCharsets.UTF_8);
+                    long[] old = removal ? index.remove(name) : index.put(name, new long[]{offset, end - offset});
+                    if (old != null)
+                        live -= old[1];
+                    if (!removal)
+                        live += end - offset;
+                    key.reset();
+                    offset = end;
+                    reading = removal = true;
+                } else if (b == '\t') {
+                    reading = removal = false;
+                } else if (reading)
+                    key.write(b);
+            }
+        }
+        if (offset < end)
+            data.setLength(offset);
+    }
+
+    private byte[] read(long[] position) throws IOException {
+        byte[] record = new byte[(int) position[1]];
+        data.seek(position[0]);
+        data.readFully(record);
+        return record;
+    }
+}
@@ -8,6 +8,9 @@
  */
 package com.archebot;
 
+import java.util.List;
+import java.util.TreeSet;
+
 public class Handler<B extends ArcheBot> {
 
     /**
@@ -31,6 +34,14 @@ public class Handler<B extends ArcheBot> {
         onAction(bot, bot.createChannel(user.getNick()), user, action);
     }
 
+    /**
+     * Runs when the bot has finished synchronizing the users of a channel it joined.
+     *
+     * @param bot the bot that synchronized the channel
+     * @param channel the channel that was synchronized
+     */
+    public void onChannelSynced(B bot, Channel channel) {}
+
     /**
      * Runs when a 3-digit numeric code is received.
      *
@@ -55,7 +66,7 @@ public class Handler<B extends ArcheBot> {
             user.notice("That command is not currently enabled.");
         else if (command.requiresNickservLogin() && !user.isIdentified())
             user.notice("You must be identified with NickServ to run that command.");
-        else if (user.hasPermission(command.getPermission()))
+        else if (user.hasPermission(channel, command.getPermission()))
             command.execute(bot, channel, user, args);
         else
             user.notice("You do not have permission to do that. (Required permission: %s)", command.getPermission());
@@ -80,6 +91,15 @@ public class Handler<B extends ArcheBot> {
             user.message("You do not have permission to do that. (Required permission: %s)", command.getPermission());
     }
 
+    /**
+     * Runs when the configuration is updated while the bot is running, such as when its file is changed. Channels
+     * have already been joined or parted, and affected users have had their permissions reloaded.
+     *
+     * @param bot the bot whose configuration changed
+     * @param change the changes that were applied
+     */
+    public void onConfigurationChange(B bot, ConfigurationChange change) {}
+
     /**
      * Runs when a connection is successfully made.
      *
@@ -240,6 +260,28 @@ public class Handler<B extends ArcheBot> {
      */
     public void onModeRemoved(B bot, User user, char mode) {}
 
+    /**
+     * Runs when a channel mode message is received.
+     * By default, runs onModeAdded or onModeRemoved for each change in the message.
+     *
+     * @param bot the bot that received the message
+     * @param channel the channel that had its modes changed
+     * @param setter the user who changed the modes
+     * @param changes the mode changes, in the order they were received
+     */
+    public void onModesChanged(B bot, Channel channel, User setter, List<ModeChange> changes) {
+        for (ModeChange change : changes)
+            if (change.getType() == ModeType.status)
+                if (change.isAdded())
+                    onModeAdded(bot, channel, setter, change.getUser(), change.getMode());
+                else
+                    onModeRemoved(bot, channel, setter, change.getUser(), change.getMode());
+            else if (change.isAdded())
+                onModeAdded(bot, channel, setter, change.getMode(), change.getValue());
+            else
+                onModeRemoved(bot, channel, setter, change.getMode());
+    }
+
     /**
      * Runs when a MOTD completed message is received.
      *
@@ -248,6 +290,31 @@ public class Handler<B extends ArcheBot> {
      */
     public void onMOTD(B bot, Server server) {}
 
+    /**
+     * Runs when users rejoin a channel after a netsplit.
+     * By default, runs onJoin for each user who rejoined.
+     *
+     * @param bot the bot that received the messages
+     * @param channel the channel that the users rejoined
+     * @param users the users who rejoined the channel
+     */
+    public void onNetjoin(B bot, Channel channel, TreeSet<User> users) {
+        users.forEach(u -> onJoin(bot, channel, u));
+    }
+
+    /**
+     * Runs when a netsplit is detected.
+     * By default, runs onQuit for each user who was split from the network.
+     *
+     * @param bot the bot that received the messages
+     * @param hub the server that remained connected to the network
+     * @param leaf the server that split from the network
+     * @param users the users who were split from the network
+     */
+    public void onNetsplit(B bot, String hub, String leaf, TreeSet<User> users) {
+        users.forEach(u -> onQuit(bot, u, hub + " " + leaf));
+    }
+
     /**
      * Runs when a nick message is received.
      *
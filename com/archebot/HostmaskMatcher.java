@@ -0,0 +1,163 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.*;
+
+/**
+ * Grants permissions to users whose identity (nick!login@hostmask) matches a glob pattern, where * matches any run of
+ * characters and ? matches exactly one. The rules are compiled into an immutable index that is replaced whenever they
+ * change, so the handler thread can match against it while other threads add and remove rules. Rules with a literal
+ * host are bucketed by that host, and rules whose host ends in a literal suffix, such as *.example.com, are bucketed by
+ * that suffix, so matching an identity only looks up its host and its suffixes of the indexed lengths. Only the rules
+ * whose host ends in a wildcard are checked one by one, with a linear time glob matcher. Users cache the result until
+ * their identity changes or the rules do, which is tracked with a version number.
+ */
+final class HostmaskMatcher {
+
+    private final HashMap<String, HashSet<String>> rules = new HashMap<>();
+    private volatile Index index = new Index(rules);
+    private volatile int version = 0;
+
+    synchronized void add(String mask, String permission) {
+        String pattern = normalize(mask);
+        if (!rules.containsKey(pattern))
+            rules.put(pattern, new HashSet<>());
+        if (rules.get(pattern).add(permission))
+            publish();
+    }
+
+    synchronized void clear(String mask) {
+        if (rules.remove(normalize(mask)) != null)
+            publish();
+    }
+
+    synchronized TreeMap<String, TreeSet<String>> getRules() {
+        TreeMap<String, TreeSet<String>> map = new TreeMap<>();
+        rules.forEach((p, s) -> map.put(p, new TreeSet<>(s)));
+        return map;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    PermissionSet match(String nick, String login, String hostmask) {
+        Index index = this.index;
+        PermissionSet set = new PermissionSet();
+        if (index.isEmpty())
+            return set;
+        String host = hostmask.toLowerCase();
+        String identity = nick.toLowerCase() + "!" + login.toLowerCase() + "@" + host;
+        index.match(index.hosts.get(host), identity, set);
+        for (int length : index.lengths)
+            if (length <= host.length())
+                index.match(index.suffixes.get(host.substring(host.length() - length)), identity, set);
+        index.match(index.wildcards, identity, set);
+        return set;
+    }
+
+    synchronized void remove(String mask, String permission) {
+        String pattern = normalize(mask);
+        HashSet<String> permissions = rules.get(pattern);
+        if (permissions != null && permissions.remove(permission)) {
+            if (permissions.isEmpty())
+                rules.remove(pattern);
+            publish();
+        }
+    }
+
+    private void publish() {
+        index = new Index(rules);
+        version++;
+    }
+
+    static boolean matches(String pattern, String text) {
+        int p = 0, t = 0, star = -1, mark = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                t = ++mark;
+            } else
+                return false;
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*')
+            p++;
+        return p == pattern.length();
+    }
+
+    static String normalize(String mask) {
+        mask = mask.toLowerCase();
+        if (!mask.contains("@"))
+            mask = mask.contains("!") ? mask + "@*" : mask + "!*@*";
+        else if (!mask.contains("!"))
+            mask = "*!" + mask;
+        return mask;
+    }
+
+    private static final class Index {
+
+        private final HashMap<String, ArrayList<Rule>> hosts = new HashMap<>();
+        private final HashMap<String, ArrayList<Rule>> suffixes = new HashMap<>();
+        private final ArrayList<Rule> wildcards = new ArrayList<>();
+        private final int[] lengths;
+
+        private Index(HashMap<String, HashSet<String>> rules) {
+            TreeSet<Integer> lengths = new TreeSet<>();
+            rules.forEach((pattern, permissions) -> {
+                Rule rule = new Rule(pattern, permissions);
+                String host = pattern.substring(pattern.lastIndexOf('@') + 1);
+                String suffix = host.substring(Math.max(host.lastIndexOf('*'), host.lastIndexOf('?')) + 1);
+                if (suffix.length() == host.length())
+                    add(hosts, host, rule);
+                else if (!suffix.isEmpty()) {
+                    add(suffixes, suffix, rule);
+                    lengths.add(suffix.length());
+                } else
+                    wildcards.add(rule);
+            });
+            this.lengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private boolean isEmpty() {
+            return hosts.isEmpty() && suffixes.isEmpty() && wildcards.isEmpty();
+        }
+
+        private void match(ArrayList<Rule> rules, String identity, PermissionSet set) {
+            if (rules != null)
+                for (Rule rule : rules)
+                    if (matches(rule.pattern, identity))
+                        for (Permission permission : rule.permissions)
+                            set.give(permission);
+        }
+
+        private static void add(HashMap<String, ArrayList<Rule>> map, String key, Rule rule) {
+            if (!map.containsKey(key))
+                map.put(key, new ArrayList<>());
+            map.get(key).add(rule);
+        }
+    }
+
+    private static final class Rule {
+
+        private final String pattern;
+        private final Permission[] permissions;
+
+        private Rule(String pattern, Set<String> permissions) {
+            this.pattern = pattern;
+            this.permissions = permissions.stream().map(Permission::get).toArray(Permission[]::new);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of configuration changes, one entry per line, kept next to the configuration file. Entries are
+ * flushed as they are written, so a crash loses at most the change being written. When the configuration is compacted
+ * the journal is moved aside until the new snapshot has been written, and any journal left aside by an earlier
+ * compaction that did not finish is replayed before the current one. Replayed entries count towards the journal's
+ * size, so entries left from earlier runs are compacted away like new ones.
+ */
+final class Journal {
+
+    private final File file;
+    private final File old;
+    private BufferedWriter writer;
+    private final ArrayList<Long> times = new ArrayList<>();
+    private int size = 0;
+
+    Journal(File file) {
+        this.file = file;
+        old = new File(file.getPath() + ".old");
+    }
+
+    void append(String entry) throws IOException {
+        if (writer == null)
+            writer = new BufferedWriter(new FileWriter(file, true));
+        writer.write(entry);
+        writer.newLine();
+        writer.flush();
+        times.add(System.currentTimeMillis());
+        size++;
+    }
+
+    void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {}
+            writer = null;
+        }
+    }
+
+    void discard() {
+        old.delete();
+    }
+
+    void replay(Consumer<String> consumer) throws IOException {
+        size += replay(old, consumer);
+        size += replay(file, consumer);
+    }
+
+    /**
+     * Replays only the entries appended by this journal at or after the given time. Entries that were replayed from an
+     * earlier run have no known time and are skipped.
+     */
+    void replay(Consumer<String> consumer, long since) throws IOException {
+        ArrayList<String> entries = new ArrayList<>();
+        replay(file, entries::add);
+        int first = entries.size() - times.size();
+        for (int i = Math.max(first, 0); i < entries.size(); i++)
+            if (times.get(i - first) >= since)
+                consumer.accept(entries.get(i));
+    }
+
+    void rotate() throws IOException {
+        close();
+        times.clear();
+        size = 0;
+        if (!file.exists())
+            return;
+        if (old.exists()) {
+            Files.write(old.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+            file.delete();
+        } else if (!file.renameTo(old))
+            throw new IOException("Unable to move " + file + " to " + old);
+    }
+
+    int size() {
+        return size;
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    static String unescape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length())
+                builder.append(value.charAt(++i) == 'n' ? '\n' : value.charAt(i));
+            else
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static int replay(File file, Consumer<String> consumer) throws IOException {
+        if (!file.exists())
+            return 0;
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (!line.isEmpty()) {
+                    consumer.accept(line);
+                    count++;
+                }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,44 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+public class ListResult implements Comparable<ListResult> {
+
+    private final String channel;
+    private final int size;
+    private final String topic;
+
+    public ListResult(String channel, int size, String topic) {
+        this.channel = channel;
+        this.size = size;
+        this.topic = topic;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int compareTo(ListResult result) {
+        return channel.compareToIgnoreCase(result.channel);
+    }
+
+    @Override
+    public String toString() {
+        return channel;
+    }
+}
@@ -0,0 +1,41 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+public enum LogLevel {
+
+    /** Detailed messages about the bot's internal workings */
+    trace("<.> "),
+
+    /** Messages useful when debugging a bot */
+    debug("<?> "),
+
+    /** General messages about the bot's state */
+    info("<> "),
+
+    /** Errors and other problems */
+    error("== Error: ");
+
+    private final String prefix;
+
+    LogLevel(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public static boolean isValue(String name) {
+        for (LogLevel level : LogLevel.values())
+            if (level.name().equalsIgnoreCase(name))
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,177 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a bot's log lines from a dedicated thread, so the threads that log only pay for adding the line to a bounded
+ * ring buffer. The writer drains the buffer in batches, writes each batch to the stream at once, and only formats the
+ * hour, minute and second of the timestamp again when the second changes. When the buffer is full, logging threads
+ * wait for space rather than dropping lines. The thread is stopped when the bot shuts down, and lines still waiting
+ * when the JVM shuts down are written by a single shutdown hook shared by every running writer.
+ */
+final class LogWriter implements Runnable {
+
+    private static final int CAPACITY = 8192;
+    private static final int BATCH = 512;
+    private static final long FLUSH_TIMEOUT = 1000;
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final HashSet<LogWriter> WRITERS = new HashSet<>();
+    private static boolean hooked = false;
+    private final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong submitted = new AtomicLong();
+    private final String name;
+    private volatile PrintStream stream;
+    private volatile long written = 0;
+    private volatile Thread thread;
+    private long second = -1;
+    private String clock;
+
+    LogWriter(String name, PrintStream stream) {
+        this.name = name;
+        this.stream = stream;
+    }
+
+    @Override
+    public void run() {
+        ArrayList<Entry> batch = new ArrayList<>(BATCH);
+        StringBuilder builder = new StringBuilder();
+        boolean running = true;
+        while (running) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            queue.drainTo(batch, running ? BATCH - 1 : Integer.MAX_VALUE);
+            for (Entry entry : batch)
+                append(builder, entry);
+            PrintStream stream = this.stream;
+            stream.print(builder);
+            stream.flush();
+            written += batch.size();
+            batch.clear();
+            builder.setLength(0);
+        }
+    }
+
+    /**
+     * Writes every waiting line and stops the writer's thread. Logging again afterwards starts a new thread.
+     */
+    void close() {
+        flush();
+        synchronized (this) {
+            Thread thread = this.thread;
+            if (thread == null)
+                return;
+            this.thread = null;
+            thread.interrupt();
+            try {
+                thread.join(FLUSH_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (WRITERS) {
+            WRITERS.remove(this);
+        }
+    }
+
+    void flush() {
+        long target = submitted.get();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+        while (written < target && System.currentTimeMillis() < deadline && thread != null && thread.isAlive())
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                return;
+            }
+    }
+
+    void print(String prefix, String line) {
+        if (thread == null)
+            start();
+        submitted.incrementAndGet();
+        try {
+            queue.put(new Entry(System.currentTimeMillis(), prefix, line));
+        } catch (InterruptedException e) {
+            submitted.decrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void setStream(PrintStream stream) {
+        flush();
+        this.stream = stream;
+    }
+
+    private void append(StringBuilder builder, Entry entry) {
+        if (entry.time / 1000 != second) {
+            second = entry.time / 1000;
+            clock = LocalTime.from(Instant.ofEpochMilli(entry.time).atZone(ZoneId.systemDefault())).format(FORMAT);
+        }
+        int millis = (int) (entry.time % 1000);
+        builder.append('[').append(clock).append(':');
+        if (millis < 100)
+            builder.append('0');
+        if (millis < 10)
+            builder.append('0');
+        builder.append(millis).append("] ").append(entry.prefix).append(entry.line).append(System.lineSeparator());
+    }
+
+    private synchronized void start() {
+        if (thread == null) {
+            Thread thread = new Thread(this, "Log Writer [" + name + "]");
+            thread.setDaemon(true);
+            thread.start();
+            this.thread = thread;
+            synchronized (WRITERS) {
+                if (!hooked) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(LogWriter::flushAll, "Log Writer Shutdown"));
+                    hooked = true;
+                }
+                WRITERS.add(this);
+            }
+        }
+    }
+
+    private static void flushAll() {
+        ArrayList<LogWriter> writers;
+        synchronized (WRITERS) {
+            writers = new ArrayList<>(WRITERS);
+        }
+        writers.forEach(LogWriter::flush);
+    }
+
+    private static final class Entry {
+
+        private final long time;
+        private final String prefix;
+        private final String line;
+
+        private Entry(long time, String prefix, String line) {
+            this.time = time;
+            this.prefix = prefix;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.*;
+
+/**
+ * The default permission store, which keeps every grant in memory and is saved as part of the configuration file.
+ */
+final class MemoryPermissionStore implements PermissionStore {
+
+    private final HashMap<String, Set<String>> permissions = new HashMap<>();
+    private final HashMap<String, Map<String, Set<String>>> channelPermissions = new HashMap<>();
+
+    @Override
+    public void add(String key, String permission) {
+        if (!permissions.containsKey(key))
+            permissions.put(key, new HashSet<>());
+        permissions.get(key).add(permission);
+    }
+
+    @Override
+    public void add(String key, String channel, String permission) {
+        if (!channelPermissions.containsKey(key))
+            channelPermissions.put(key, new HashMap<>());
+        Map<String, Set<String>> channels = channelPermissions.get(key);
+        if (!channels.containsKey(channel))
+            channels.put(channel, new HashSet<>());
+        channels.get(channel).add(permission);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return permissions.containsKey(key) || channelPermissions.containsKey(key);
+    }
+
+    @Override
+    public Map<String, Set<String>> getChannelPermissions(String key) {
+        return channelPermissions.containsKey(key) ? channelPermissions.get(key) : Collections.emptyMap();
+    }
+
+    @Override
+    public Set<String> getPermissions(String key) {
+        return permissions.containsKey(key) ? permissions.get(key) : Collections.emptySet();
+    }
+
+    @Override
+    public void put(String key, Set<String> permissions, Map<String, Set<String>> channelPermissions) {
+        if (permissions.isEmpty())
+            this.permissions.remove(key);
+        else
+            this.permissions.put(key, new HashSet<>(permissions));
+        if (channelPermissions.isEmpty())
+            this.channelPermissions.remove(key);
+        else
+            this.channelPermissions.put(key, PermissionStore.copy(channelPermissions));
+    }
+
+    @Override
+    public void remove(String key) {
+        permissions.remove(key);
+        channelPermissions.remove(key);
+    }
+
+    @Override
+    public void remove(String key, String permission) {
+        Set<String> set = permissions.get(key);
+        if (set != null) {
+            set.remove(permission);
+            if (set.isEmpty())
+                permissions.remove(key);
+        }
+    }
+
+    @Override
+    public void remove(String key, String channel, String permission) {
+        Map<String, Set<String>> channels = channelPermissions.get(key);
+        if (channels != null && channels.containsKey(channel)) {
+            Set<String> set = channels.get(channel);
+            set.remove(permission);
+            if (set.isEmpty())
+                channels.remove(channel);
+            if (channels.isEmpty())
+                channelPermissions.remove(key);
+        }
+    }
+
+    @Override
+    public boolean rename(String oldKey, String newKey) {
+        if (!contains(oldKey) || contains(newKey))
+            return false;
+        if (permissions.containsKey(oldKey))
+            permissions.put(newKey, permissions.remove(oldKey));
+        if (channelPermissions.containsKey(oldKey))
+            channelPermissions.put(newKey, channelPermissions.remove(oldKey));
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return permissions.size();
+    }
+
+    Set<String> getKeys() {
+        HashSet<String> keys = new HashSet<>(permissions.keySet());
+        keys.addAll(channelPermissions.keySet());
+        return keys;
+    }
+}
@@ -0,0 +1,109 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import com.archebot.exceptions.ConnectionStateException;
+
+import java.util.ArrayList;
+
+/**
+ * Collects channel mode changes and sends them in as few MODE lines as possible. Each line holds as many changes with
+ * values as the server's MODES token allows (three if the server does not send one) and never exceeds the lineLength
+ * property, so a change like +ooo-v is sent on a single line instead of four.
+ */
+public class ModeBuilder {
+
+    private final Channel channel;
+    private final ArrayList<ModeChange> changes = new ArrayList<>();
+
+    public ModeBuilder(Channel channel) {
+        this.channel = channel;
+    }
+
+    public ModeBuilder add(char mode) {
+        return add(mode, "");
+    }
+
+    public ModeBuilder add(char mode, User user) {
+        return add(mode, user.getNick());
+    }
+
+    public ModeBuilder add(char mode, String value) {
+        changes.add(new ModeChange(true, mode, value));
+        return this;
+    }
+
+    public ArrayList<ModeChange> getChanges() {
+        return new ArrayList<>(changes);
+    }
+
+    public ModeBuilder remove(char mode) {
+        return remove(mode, "");
+    }
+
+    public ModeBuilder remove(char mode, User user) {
+        return remove(mode, user.getNick());
+    }
+
+    public ModeBuilder remove(char mode, String value) {
+        changes.add(new ModeChange(false, mode, value));
+        return this;
+    }
+
+    public void send() throws ConnectionStateException {
+        ArcheBot bot = channel.getBot();
+        for (String line : toLines())
+            bot.send(line);
+        changes.clear();
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    public ArrayList<String> toLines() {
+        ArcheBot bot = channel.getBot();
+        Server server = bot.getServer();
+        int limit = server == null ? 3 : server.getModesLimit();
+        int length = bot.getConfiguration().getInteger(Property.lineLength);
+        String start = "MODE " + channel.getName() + " ";
+        ArrayList<String> lines = new ArrayList<>();
+        StringBuilder modes = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        Boolean added = null;
+        int count = 0;
+        for (ModeChange change : changes) {
+            int size = start.length() + modes.length() + values.length() + 2 + (change.hasValue() ? change.getValue().length() + 1 : 0);
+            if (modes.length() > 0 && (change.hasValue() && limit > 0 && count >= limit || size > length)) {
+                lines.add(start + modes + values);
+                modes.setLength(0);
+                values.setLength(0);
+                added = null;
+                count = 0;
+            }
+            if (added == null || added != change.isAdded()) {
+                added = change.isAdded();
+                modes.append(added ? '+' : '-');
+            }
+            modes.append(change.getMode());
+            if (change.hasValue()) {
+                values.append(' ').append(change.getValue());
+                count++;
+            }
+        }
+        if (modes.length() > 0)
+            lines.add(start + modes + values);
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "ModeBuilder [" + channel + "]";
+    }
+}
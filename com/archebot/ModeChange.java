@@ -0,0 +1,59 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+public class ModeChange {
+
+    private final boolean added;
+    private final char mode;
+    private final String value;
+    private final ModeType type;
+    private final User user;
+
+    public ModeChange(boolean added, char mode, String value) {
+        this(added, mode, value, ModeType.unknown, null);
+    }
+
+    protected ModeChange(boolean added, char mode, String value, ModeType type, User user) {
+        this.added = added;
+        this.mode = mode;
+        this.value = value;
+        this.type = type;
+        this.user = user;
+    }
+
+    public char getMode() {
+        return mode;
+    }
+
+    public ModeType getType() {
+        return type;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public boolean hasValue() {
+        return !value.isEmpty();
+    }
+
+    public boolean isAdded() {
+        return added;
+    }
+
+    @Override
+    public String toString() {
+        return (added ? "+" : "-") + mode + (value.isEmpty() ? "" : " " + value);
+    }
+}
@@ -0,0 +1,174 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the QUIT and JOIN storms caused by netsplits and netjoins so they can be applied as one state update.
+ * Splits are recognized either by a quit message naming two servers or by an IRCv3 netsplit batch, and the users
+ * who split are remembered for the userExpiry property so that their rejoining can be recognized as a netjoin.
+ * Collected messages are applied when their batch ends, when the servers named by a split change, when a line from one
+ * of the collected users arrives, or once no further split or join has arrived for the quiet period, so a storm that
+ * arrives across several idle cycles is still reported as a single event.
+ */
+@SuppressWarnings("unchecked")
+final class Netsplits {
+
+    static final long QUIET_PERIOD = 1000;
+    private static final Pattern SPLIT = Pattern.compile("[\\w*-]+(\\.[\\w*-]+)+ [\\w*-]+(\\.[\\w*-]+)+");
+    private final ArcheBot bot;
+    private final Connection connection;
+    private final Synchronizer synchronizer;
+    private final WhoisCache whoisCache;
+    private final HashMap<String, String> batches = new HashMap<>();
+    private final HashMap<String, User> split = new HashMap<>();
+    private final HashMap<String, Long> splitTimes = new HashMap<>();
+    private final LinkedHashSet<User> quits = new LinkedHashSet<>();
+    private final LinkedHashMap<Channel, LinkedHashSet<User>> joins = new LinkedHashMap<>();
+    private String servers;
+    private long last;
+
+    Netsplits(ArcheBot bot, Connection connection, Synchronizer synchronizer, WhoisCache whoisCache) {
+        this.bot = bot;
+        this.connection = connection;
+        this.synchronizer = synchronizer;
+        this.whoisCache = whoisCache;
+    }
+
+    void close(String batch) {
+        if (batches.remove(batch) != null)
+            flush();
+    }
+
+    void expire() {
+        if (splitTimes.isEmpty())
+            return;
+        long time = System.currentTimeMillis() - bot.getConfiguration().getInteger(Property.userExpiry);
+        Iterator<Map.Entry<String, Long>> iterator = splitTimes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getValue() <= time) {
+                iterator.remove();
+                split.remove(entry.getKey());
+            }
+        }
+    }
+
+    void flush() {
+        if (!quits.isEmpty())
+            flushQuits();
+        if (!joins.isEmpty())
+            flushJoins();
+    }
+
+    void idle() {
+        if ((!quits.isEmpty() || !joins.isEmpty()) && connection.getTime() - last >= QUIET_PERIOD)
+            flush();
+    }
+
+    boolean isPending(User user) {
+        if (quits.contains(user))
+            return true;
+        for (LinkedHashSet<User> users : joins.values())
+            if (users.contains(user))
+                return true;
+        return false;
+    }
+
+    boolean join(User user, Channel channel, String batch) {
+        if (user == bot)
+            return false;
+        if (quits.contains(user))
+            flushQuits();
+        boolean batched = batch != null && batches.containsKey(batch) && batches.get(batch).startsWith("netjoin ");
+        if (!batched && !split.containsKey(bot.fold(user.getNick())))
+            return false;
+        if (!joins.containsKey(channel))
+            joins.put(channel, new LinkedHashSet<>());
+        joins.get(channel).add(user);
+        last = connection.getTime();
+        return true;
+    }
+
+    void open(String batch, String type, String servers) {
+        batches.put(batch, type.toLowerCase() + " " + servers);
+    }
+
+    boolean quit(User user, String reason, String batch) {
+        if (user == bot)
+            return false;
+        if (batch != null && batches.containsKey(batch) && batches.get(batch).startsWith("netsplit "))
+            reason = batches.get(batch).substring(9);
+        else if (!isSplit(reason))
+            return false;
+        if (!joins.isEmpty() || !reason.equals(servers))
+            flush();
+        servers = reason;
+        quits.add(user);
+        last = connection.getTime();
+        return true;
+    }
+
+    private void flushJoins() {
+        ArrayList<String> rejoined = new ArrayList<>();
+        for (Map.Entry<Channel, LinkedHashSet<User>> entry : joins.entrySet()) {
+            Channel channel = entry.getKey();
+            HashMap<User, HashSet<Character>> users = new HashMap<>(entry.getValue().size() * 4 / 3 + 1);
+            for (User user : entry.getValue()) {
+                String key = bot.fold(user.getNick());
+                User previous = split.get(key);
+                if (previous != null && previous != user && previous.getIdentity().equalsIgnoreCase(user.getIdentity())) {
+                    user.setRealname(previous.getRealname());
+                    user.setServer(previous.getServer());
+                    connection.rekey(user, () -> user.setNickservLogin(previous.getNickservLogin()));
+                    user.setUpdateTime(previous.getUpdateTime());
+                }
+                rejoined.add(key);
+                user.setKnown(true);
+                users.put(user, new HashSet<>());
+            }
+            channel.addUsers(users);
+            entry.getValue().forEach(u -> synchronizer.update(channel, u));
+            bot.getHandler().onNetjoin(bot, channel, new TreeSet<>(entry.getValue()));
+        }
+        joins.clear();
+        split.keySet().removeAll(rejoined);
+        splitTimes.keySet().removeAll(rejoined);
+    }
+
+    private void flushQuits() {
+        Configuration configuration = bot.getConfiguration();
+        UserMap users = bot.getUserMap();
+        long time = System.currentTimeMillis();
+        for (Channel channel : bot.getChannelMap())
+            channel.removeUsers(quits);
+        for (User user : quits) {
+            configuration.storePermissions(user);
+            users.removeUser(user.getNick());
+            whoisCache.invalidate(user.getNick());
+            user.setKnown(false);
+            split.put(bot.fold(user.getNick()), user);
+            splitTimes.put(bot.fold(user.getNick()), time);
+        }
+        String[] names = servers.split(" ", 2);
+        TreeSet<User> affected = new TreeSet<>(quits);
+        quits.clear();
+        servers = null;
+        bot.getHandler().onNetsplit(bot, names[0], names.length > 1 ? names[1] : "", affected);
+    }
+
+    private static boolean isSplit(String reason) {
+        if (!SPLIT.matcher(reason).matches())
+            return false;
+        String[] hosts = reason.split(" ");
+        return !hosts[0].equalsIgnoreCase(hosts[1]);
+    }
+}
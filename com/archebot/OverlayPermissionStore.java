@@ -0,0 +1,57 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads grants from another store but keeps every change in memory, so the other store is never written to. Used by
+ * replays, which must not change the permissions of the bot they run on.
+ */
+final class OverlayPermissionStore implements PermissionStore {
+
+    private final PermissionStore base;
+    private final MemoryPermissionStore changes = new MemoryPermissionStore();
+    private final HashSet<String> changed = new HashSet<>();
+
+    OverlayPermissionStore(PermissionStore base) {
+        this.base = base;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return changed.contains(key) ? changes.contains(key) : base.contains(key);
+    }
+
+    @Override
+    public Map<String, Set<String>> getChannelPermissions(String key) {
+        return changed.contains(key) ? changes.getChannelPermissions(key) : base.getChannelPermissions(key);
+    }
+
+    @Override
+    public Set<String> getPermissions(String key) {
+        return changed.contains(key) ? changes.getPermissions(key) : base.getPermissions(key);
+    }
+
+    @Override
+    public void put(String key, Set<String> permissions, Map<String, Set<String>> channelPermissions) {
+        changed.add(key);
+        changes.put(key, permissions, channelPermissions);
+    }
+
+    @Override
+    public int size() {
+        int size = base.size();
+        for (String key : changed)
+            size += (changes.contains(key) ? 1 : 0) - (base.contains(key) ? 1 : 0);
+        return size;
+    }
+}
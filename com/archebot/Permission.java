@@ -8,35 +8,63 @@
  */
 package com.archebot;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+/**
+ * Permissions are given dense integer ids as they are created, and each keeps the closure of every permission it
+ * includes, directly or indirectly, as a BitSet indexed by those ids. Including a permission updates the closures
+ * of every permission that reaches it, so users can resolve their effective permissions with a handful of BitSet
+ * operations and check them with a single bit test.
+ * The registry is shared by every bot in the JVM. Lookups are lock free, going through a cache of the exact names
+ * requested before falling back to the case folded registry, while creating and including permissions is serialized
+ * and replaces closures rather than modifying them, so readers always see a consistent set.
+ * Names are hierarchical, separated by dots, and a name containing a * segment is a wildcard that includes every
+ * concrete permission it matches, including ones created after it. Granting music.* is a single grant no matter how
+ * many music permissions a plugin registers.
+ */
 public class Permission implements Comparable<Permission>, Iterable<Permission> {
 
-    private static final HashMap<String, Permission> permissions = new HashMap<>();
+    private static final String PREFIX = "permission.";
+    private static final int LOOKUP_LIMIT = 1024;
+    private static final ConcurrentHashMap<String, Permission> permissions = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Permission> lookups = new ConcurrentHashMap<>();
+    private static final CopyOnWriteArrayList<Permission> ids = new CopyOnWriteArrayList<>();
+    private static final PermissionTrie trie = new PermissionTrie();
+    private static volatile int version = 0;
     public static final Permission OPERATOR = new Permission("operator", true);
     public static final Permission DEFAULT = new Permission("default", false);
     public static final Permission IGNORE = new Permission("ignore", true);
     private final String name;
+    private final int id;
     private final TreeSet<Permission> subPermissions = new TreeSet<>();
-    private boolean savable;
+    private volatile BitSet closure = new BitSet();
+    private volatile boolean savable;
 
     private Permission(String name, boolean savable) {
         this.name = name;
         this.savable = savable;
+        id = ids.size();
+        ids.add(this);
+        closure.set(id);
         permissions.put(name.toLowerCase(), this);
     }
 
+    public int getId() {
+        return id;
+    }
+
     public TreeSet<Permission> getSubPermissions() {
-        return new TreeSet<>(subPermissions);
+        synchronized (ids) {
+            return new TreeSet<>(subPermissions);
+        }
     }
 
     public TreeSet<Permission> getSubPermissions(Predicate<Permission> predicate) {
-        return new TreeSet<>(subPermissions.stream().filter(predicate).collect(Collectors.toSet()));
+        return new TreeSet<>(getSubPermissions().stream().filter(predicate).collect(Collectors.toSet()));
     }
 
     public String getName() {
@@ -44,9 +72,11 @@ public class Permission implements Comparable<Permission>, Iterable<Permission>
     }
 
     public void include(Permission permission, Permission... permissions) {
-        subPermissions.add(permission);
-        if (permissions.length > 0)
-            subPermissions.addAll(Arrays.asList(permissions));
+        synchronized (ids) {
+            addSubPermission(permission);
+            for (Permission p : permissions)
+                addSubPermission(p);
+        }
     }
 
     public void include(String permission, String... permissions) {
@@ -60,7 +90,13 @@ public class Permission implements Comparable<Permission>, Iterable<Permission>
     }
 
     public boolean includes(Permission permission) {
-        return subPermissions.contains(permission);
+        synchronized (ids) {
+            return subPermissions.contains(permission);
+        }
+    }
+
+    public boolean isWildcard() {
+        return PermissionTrie.isWildcard(name);
     }
 
     public boolean isSavable() {
@@ -81,9 +117,14 @@ public class Permission implements Comparable<Permission>, Iterable<Permission>
         return obj instanceof Permission && obj.toString().equals(toString());
     }
 
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
     @Override
     public Iterator<Permission> iterator() {
-        return subPermissions.iterator();
+        return getSubPermissions().iterator();
     }
 
     @Override
@@ -91,24 +132,93 @@ public class Permission implements Comparable<Permission>, Iterable<Permission>
         return name;
     }
 
+    BitSet getClosure() {
+        return closure;
+    }
+
+    private void addSubPermission(Permission permission) {
+        if (!subPermissions.add(permission))
+            return;
+        BitSet added = (BitSet) permission.closure.clone();
+        added.andNot(closure);
+        if (added.isEmpty())
+            return;
+        for (Permission p : ids) {
+            if (p.closure.get(id)) {
+                BitSet updated = (BitSet) p.closure.clone();
+                updated.or(added);
+                p.closure = updated;
+            }
+        }
+        version++;
+    }
+
     public static boolean exists(String name) {
-        return permissions.containsKey(name.replaceAll("^permission\\.", "").toLowerCase());
+        return lookups.containsKey(name) || permissions.containsKey(strip(name).toLowerCase());
     }
 
     public static Permission get(String name) {
-        name = name.replaceAll("^permission\\.", "");
-        if (permissions.containsKey(name.toLowerCase()))
-            return permissions.get(name.toLowerCase());
-        Permission permission = new Permission(name, true);
-        OPERATOR.include(permission);
+        Permission permission = lookups.get(name);
+        if (permission != null)
+            return permission;
+        String stripped = strip(name);
+        String key = stripped.toLowerCase();
+        permission = permissions.get(key);
+        if (permission == null) {
+            synchronized (ids) {
+                permission = permissions.get(key);
+                if (permission == null) {
+                    permission = new Permission(stripped, true);
+                    OPERATOR.addSubPermission(permission);
+                    trie.add(permission);
+                    if (permission.isWildcard())
+                        for (Permission p : trie.match(permission))
+                            permission.addSubPermission(p);
+                    else
+                        for (Permission p : trie.match(permission))
+                            p.addSubPermission(permission);
+                }
+            }
+        }
+        if (lookups.size() >= LOOKUP_LIMIT)
+            lookups.clear();
+        lookups.put(name, permission);
         return permission;
     }
 
     public static TreeSet<Permission> getAll() {
-        return new TreeSet<>(permissions.values());
+        return new TreeSet<>(ids);
     }
 
     public static TreeSet<Permission> getAll(Predicate<Permission> predicate) {
-        return new TreeSet<>(permissions.values().stream().filter(predicate).collect(Collectors.toSet()));
+        return new TreeSet<>(getAll().stream().filter(predicate).collect(Collectors.toSet()));
+    }
+
+    public static TreeMap<Permission, TreeSet<Permission>> snapshot() {
+        TreeMap<Permission, TreeSet<Permission>> snapshot = new TreeMap<>();
+        synchronized (ids) {
+            for (Permission permission : ids)
+                snapshot.put(permission, new TreeSet<>(permission.subPermissions));
+        }
+        return snapshot;
+    }
+
+    static Permission get(int id) {
+        return ids.get(id);
+    }
+
+    static TreeSet<Permission> get(BitSet bits) {
+        TreeSet<Permission> set = new TreeSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+            set.add(ids.get(i));
+        return set;
+    }
+
+    static int getVersion() {
+        return version;
+    }
+
+    private static String strip(String name) {
+        return name.startsWith(PREFIX) ? name.substring(PREFIX.length()) : name;
     }
 }
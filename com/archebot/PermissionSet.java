@@ -0,0 +1,71 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.BitSet;
+import java.util.TreeSet;
+
+/**
+ * The permissions granted to a user, either network wide or in a single channel. Explicit grants are kept as a BitSet
+ * of permission ids, and the effective permissions are cached until the permission graph changes.
+ */
+final class PermissionSet {
+
+    private final BitSet grants = new BitSet();
+    private BitSet effective = new BitSet();
+    private int version = -1;
+
+    void clear() {
+        grants.clear();
+        version = -1;
+    }
+
+    TreeSet<Permission> getGrants() {
+        return Permission.get(grants);
+    }
+
+    TreeSet<Permission> getPermissions() {
+        return Permission.get(getEffective());
+    }
+
+    void give(Permission permission) {
+        grants.set(permission.getId());
+        if (version == Permission.getVersion())
+            effective.or(permission.getClosure());
+    }
+
+    boolean has(Permission permission) {
+        return getEffective().get(permission.getId());
+    }
+
+    boolean isEmpty() {
+        return grants.isEmpty();
+    }
+
+    boolean isGranted(Permission permission) {
+        return grants.get(permission.getId());
+    }
+
+    void remove(Permission permission) {
+        grants.clear(permission.getId());
+        version = -1;
+    }
+
+    private BitSet getEffective() {
+        int current = Permission.getVersion();
+        if (version != current) {
+            BitSet bits = new BitSet();
+            for (int i = grants.nextSetBit(0); i >= 0; i = grants.nextSetBit(i + 1))
+                bits.or(Permission.get(i).getClosure());
+            effective = bits;
+            version = current;
+        }
+        return effective;
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the permissions granted to users, keyed by the lowercase nick or account key of the user. By default a
+ * configuration keeps every grant in memory and saves them with its other settings; a different store can be set to
+ * keep them elsewhere, in which case grants are only read when a user with that key is first seen.
+ * Implementations only need to read and replace the grants for a key. The finer grained operations have default
+ * implementations built on those, which a store may override when it can do better.
+ */
+public interface PermissionStore {
+
+    boolean contains(String key);
+
+    Map<String, Set<String>> getChannelPermissions(String key);
+
+    Set<String> getPermissions(String key);
+
+    void put(String key, Set<String> permissions, Map<String, Set<String>> channelPermissions);
+
+    int size();
+
+    default void add(String key, String permission) {
+        Set<String> permissions = new HashSet<>(getPermissions(key));
+        if (permissions.add(permission))
+            put(key, permissions, getChannelPermissions(key));
+    }
+
+    default void add(String key, String channel, String permission) {
+        Map<String, Set<String>> channels = copy(getChannelPermissions(key));
+        if (!channels.containsKey(channel))
+            channels.put(channel, new HashSet<>());
+        if (channels.get(channel).add(permission))
+            put(key, getPermissions(key), channels);
+    }
+
+    default void remove(String key) {
+        put(key, new HashSet<>(), new HashMap<>());
+    }
+
+    default void remove(String key, String permission) {
+        Set<String> permissions = new HashSet<>(getPermissions(key));
+        if (permissions.remove(permission))
+            put(key, permissions, getChannelPermissions(key));
+    }
+
+    default void remove(String key, String channel, String permission) {
+        Map<String, Set<String>> channels = copy(getChannelPermissions(key));
+        if (channels.containsKey(channel) && channels.get(channel).remove(permission)) {
+            if (channels.get(channel).isEmpty())
+                channels.remove(channel);
+            put(key, getPermissions(key), channels);
+        }
+    }
+
+    default boolean rename(String oldKey, String newKey) {
+        if (!contains(oldKey) || contains(newKey))
+            return false;
+        put(newKey, getPermissions(oldKey), getChannelPermissions(oldKey));
+        remove(oldKey);
+        return true;
+    }
+
+    static Map<String, Set<String>> copy(Map<String, Set<String>> channels) {
+        HashMap<String, Set<String>> copy = new HashMap<>();
+        channels.forEach((c, s) -> copy.put(c, new HashSet<>(s)));
+        return copy;
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Indexes dotted permission names by segment. One trie holds the concrete permissions and another holds the wildcard
+ * permissions, so a new permission of either kind is matched against the other with a walk bounded by its number of
+ * segments. A * segment matches exactly one segment, except at the end of a name where it matches one or more.
+ */
+final class PermissionTrie {
+
+    private final Node concrete = new Node();
+    private final Node wildcards = new Node();
+
+    void add(Permission permission) {
+        Node node = permission.isWildcard() ? wildcards : concrete;
+        for (String segment : split(permission.getName())) {
+            if (!node.children.containsKey(segment))
+                node.children.put(segment, new Node());
+            node = node.children.get(segment);
+        }
+        node.permission = permission;
+    }
+
+    HashSet<Permission> match(Permission permission) {
+        HashSet<Permission> matches = new HashSet<>();
+        String[] segments = split(permission.getName());
+        if (permission.isWildcard())
+            matchConcrete(concrete, segments, 0, matches);
+        else
+            matchWildcards(wildcards, segments, 0, false, matches);
+        return matches;
+    }
+
+    private void collect(Node node, HashSet<Permission> matches) {
+        for (Node child : node.children.values()) {
+            if (child.permission != null)
+                matches.add(child.permission);
+            collect(child, matches);
+        }
+    }
+
+    private void matchConcrete(Node node, String[] pattern, int i, HashSet<Permission> matches) {
+        if (i == pattern.length) {
+            if (node.permission != null)
+                matches.add(node.permission);
+        } else if (pattern[i].equals("*")) {
+            if (i == pattern.length - 1)
+                collect(node, matches);
+            else
+                for (Node child : node.children.values())
+                    matchConcrete(child, pattern, i + 1, matches);
+        } else if (node.children.containsKey(pattern[i])) {
+            matchConcrete(node.children.get(pattern[i]), pattern, i + 1, matches);
+        }
+    }
+
+    private void matchWildcards(Node node, String[] segments, int i, boolean wildcard, HashSet<Permission> matches) {
+        if (node.permission != null && (i == segments.length || wildcard))
+            matches.add(node.permission);
+        if (i == segments.length)
+            return;
+        if (node.children.containsKey(segments[i]))
+            matchWildcards(node.children.get(segments[i]), segments, i + 1, false, matches);
+        if (node.children.containsKey("*"))
+            matchWildcards(node.children.get("*"), segments, i + 1, true, matches);
+    }
+
+    static boolean isWildcard(String name) {
+        return name.equals("*") || name.startsWith("*.") || name.endsWith(".*") || name.contains(".*.");
+    }
+
+    private static String[] split(String name) {
+        return name.toLowerCase().split("\\.");
+    }
+
+    private static final class Node {
+
+        private final HashMap<String, Node> children = new HashMap<>();
+        private Permission permission;
+    }
+}
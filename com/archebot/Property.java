@@ -19,13 +19,13 @@ public enum Property {
     /** Lets the nick be reset to the default if it is different */
     checkNick(false),
 
-    /** The time in milliseconds between thread loops to prevent CPU over-usage (Requires reconnecting to apply changes) */
+    /** The time in milliseconds between thread loops to prevent CPU over-usage */
     cycleDelay(50),
 
     /** Lets commands be turned on or off */
     enableCommands(true),
 
-    /** Lets &[#] shortcuts be used to format messages */
+    /** Lets &[#], &b, &i, &u, and &r shortcuts be used to format messages */
     enableFormatting(true),
 
     /** Lets logging be turned on and off */
@@ -46,6 +46,9 @@ public enum Property {
     /** The bot's server login identification */
     login("ArcheBot"),
 
+    /** The lowest level of messages to log (trace, debug, info, or error) */
+    logLevel("info"),
+
     /** Lets internal errors be logged */
     logErrorTrace(true),
 
@@ -55,7 +58,7 @@ public enum Property {
     /** Lets messages sent by the bot be logged */
     logOutput(true),
 
-    /** The time in milliseconds between sending each message (Requires reconnecting to apply changes) */
+    /** The time in milliseconds between sending each message */
     messageDelay(1000),
 
     /** The bot's default nick - must be set before connecting */
@@ -79,9 +82,15 @@ public enum Property {
     /** The bot's realname */
     realname("ArcheBot (Version " + ArcheBot.VERSION + ") by Perrin Swanson"),
 
+    /** The time in milliseconds to wait for the server to reply to a query before giving up */
+    queryTimeout(30000),
+
     /** The time in milliseconds between reconnect attempts */
     reconnectDelay(0),
 
+    /** Lets every raw line sent and received be recorded to a traffic journal next to the configuration file */
+    recordTraffic(false),
+
     /** Removes extra spaces after command arguments */
     removeTrailingSpaces(false),
 
@@ -91,7 +100,7 @@ public enum Property {
     /** The server name - must be set before connecting */
     server(null),
 
-    /** The time in milliseconds of server silence before timing out (Requires reconnecting to apply changes) */
+    /** The time in milliseconds of server silence before timing out */
     timeoutDelay(240000),
 
     /** Adds/removes channels from the current configuration */
@@ -100,8 +109,17 @@ public enum Property {
     /** Lets the configuration nick be modified when the server-side nick is */
     updateNick(false),
 
+    /** The time in milliseconds that WHO information about a user is considered current */
+    userExpiry(300000),
+
     /** Lets the bot be set as visible or hidden on the server */
-    visible(false);
+    visible(false),
+
+    /** Lets the configuration be reloaded whenever its file is changed (Applies when connecting) */
+    watchConfig(false),
+
+    /** The time in milliseconds that a cached WHOIS result is considered current */
+    whoisExpiry(300000);
 
     private final Object defaultValue;
 
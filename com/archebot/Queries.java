@@ -0,0 +1,163 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import com.archebot.exceptions.ConnectionStateException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Matches server replies to the WHO, ban list, and LIST requests that asked for them. When the labeled-response
+ * capability is enabled each request is sent with a label and its replies are matched by that label. Otherwise
+ * replies are matched by their target, with WHO replies matched by the folded mask named in the end of WHO reply.
+ * Identical requests that are still waiting for a reply share a single future.
+ */
+final class Queries {
+
+    static final String WHOX_FIELDS = "%tcuhnfar";
+    static final String WHOX_TOKEN = "152";
+    private final ArcheBot bot;
+    private final HashMap<String, Query<String>> bans = new HashMap<>();
+    private final HashMap<String, Query<ListResult>> lists = new HashMap<>();
+    private final HashMap<String, Query<User>> whos = new HashMap<>();
+    private final HashMap<String, String> labels = new HashMap<>();
+    private int count = 0;
+
+    Queries(ArcheBot bot) {
+        this.bot = bot;
+    }
+
+    synchronized void addBan(String label, String channel, String mask) {
+        Query<String> query = bans.get(getKey(label, "bans " + bot.fold(channel)));
+        if (query != null)
+            query.results.add(mask);
+    }
+
+    synchronized void addList(String label, ListResult result) {
+        Query<ListResult> query = lists.get(getKey(label, "list"));
+        if (query != null)
+            query.results.add(result);
+    }
+
+    synchronized void addWho(String label, String mask, User user) {
+        Query<User> query = whos.get(getKey(label, "who " + bot.fold(mask)));
+        if (query != null)
+            query.results.add(user);
+    }
+
+    CompletableFuture<TreeSet<String>> bans(String channel) {
+        return request(bans, "bans " + bot.fold(channel), "MODE " + channel + " +b");
+    }
+
+    void cancel() {
+        ArrayList<Query<?>> cancelled;
+        synchronized (this) {
+            cancelled = getQueries();
+            bans.clear();
+            lists.clear();
+            whos.clear();
+            labels.clear();
+        }
+        cancelled.forEach(q -> q.future.completeExceptionally(new ConnectionStateException(State.disconnecting, "Disconnected before the server replied to [" + q.key + "]")));
+    }
+
+    void complete(String label, String key) {
+        Query<?> query;
+        synchronized (this) {
+            query = remove(getKey(label, key));
+        }
+        if (query != null)
+            query.complete();
+    }
+
+    void expire() {
+        ArrayList<Query<?>> expired;
+        synchronized (this) {
+            long time = System.currentTimeMillis();
+            expired = getQueries();
+            expired.removeIf(q -> q.deadline > time);
+            expired.forEach(q -> remove(q.key));
+        }
+        expired.forEach(q -> q.future.completeExceptionally(new TimeoutException("No reply received for [" + q.key + "]")));
+    }
+
+    CompletableFuture<TreeSet<ListResult>> list() {
+        return request(lists, "list", "LIST");
+    }
+
+    CompletableFuture<TreeSet<User>> who(String mask) {
+        Server server = bot.getServer();
+        if (server != null && server.supportsWhox())
+            return request(whos, "who " + bot.fold(mask), "WHO " + mask + " " + WHOX_FIELDS + "," + WHOX_TOKEN);
+        return request(whos, "who " + bot.fold(mask), "WHO " + mask);
+    }
+
+    private String getKey(String label, String key) {
+        if (label != null && labels.containsKey(label))
+            return labels.get(label);
+        return key;
+    }
+
+    private ArrayList<Query<?>> getQueries() {
+        ArrayList<Query<?>> all = new ArrayList<>(bans.values());
+        all.addAll(lists.values());
+        all.addAll(whos.values());
+        return all;
+    }
+
+    private Query<?> remove(String key) {
+        if (key == null)
+            return null;
+        Query<?> query = bans.remove(key);
+        if (query == null)
+            query = lists.remove(key);
+        if (query == null)
+            query = whos.remove(key);
+        if (query != null && query.label != null)
+            labels.remove(query.label);
+        return query;
+    }
+
+    private synchronized <T> CompletableFuture<TreeSet<T>> request(HashMap<String, Query<T>> map, String key, String line) {
+        Query<T> query = map.get(key);
+        if (query == null) {
+            query = new Query<>(key);
+            map.put(key, query);
+            if (bot.hasCapability("labeled-response")) {
+                query.label = Integer.toString(count++, 36);
+                labels.put(query.label, key);
+                bot.send("@label=" + query.label + " " + line);
+            } else
+                bot.send(line);
+        }
+        return query.future;
+    }
+
+    private final class Query<T> {
+
+        private final String key;
+        private final long deadline;
+        private final TreeSet<T> results = new TreeSet<>();
+        private final CompletableFuture<TreeSet<T>> future = new CompletableFuture<>();
+        private String label;
+
+        private Query(String key) {
+            this.key = key;
+            deadline = System.currentTimeMillis() + bot.getConfiguration().getInteger(Property.queryTimeout);
+        }
+
+        private void complete() {
+            future.complete(results);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a bot from recorded inbound traffic instead of a server. Every line goes through the same parsing, state
+ * updates and handler calls as a live connection, on the calling thread, and every line the bot sends is captured
+ * instead of written to a socket. Traffic can be read from a traffic journal, from a log written with logInput
+ * enabled, or from a list of raw lines, and is replayed as fast as possible or with its original timing.
+ * The periodic work a live connection does while waiting for lines, such as sending queued WHO requests, is done
+ * wherever the recording was idle for at least the cycle delay, and after every line replayed from a list.
+ * Logs only keep the text of each line, so lines replayed from a log have had their formatting codes stripped.
+ * A replay runs against a detached copy of the bot's configuration, so nothing it changes is journaled or saved, and
+ * the bot goes back to its own configuration when the replay ends, however it ends.
+ * This class can also be run on its own to measure how quickly a recording is handled:
+ * <pre>java com.archebot.Replay [-t] path</pre>
+ *
+ * @see TrafficJournal
+ */
+public class Replay {
+
+    private static final String INPUT = "] <- ";
+    private final ArcheBot bot;
+    private final StringWriter output = new StringWriter();
+    private final ArrayList<Exception> errors = new ArrayList<>();
+    private boolean realTime = false;
+    private int lines = 0;
+    private long elapsed = 0;
+
+    public Replay(ArcheBot bot) {
+        this.bot = bot;
+    }
+
+    public ArcheBot getBot() {
+        return bot;
+    }
+
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    public ArrayList<Exception> getErrors() {
+        return errors;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public List<String> getOutput() {
+        String text = output.toString();
+        return text.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(text.split("\r?\n")));
+    }
+
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    public void replay(File log) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(log))) {
+            Connection connection = start();
+            long previous = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long time = -1;
+                if (line.startsWith("[")) {
+                    int index = line.indexOf(INPUT);
+                    if (index < 0)
+                        continue;
+                    time = parseTime(line.substring(1, index));
+                    line = line.substring(index + INPUT.length());
+                }
+                long gap = previous >= 0 && time >= previous ? TimeUnit.MILLISECONDS.toNanos(time - previous) : -1;
+                if (time >= 0)
+                    previous = time;
+                handle(connection, line, gap);
+            }
+            finish(connection);
+        }
+    }
+
+    public void replay(List<String> lines) throws IOException {
+        Connection connection = start();
+        for (String line : lines)
+            handle(connection, line, -1);
+        finish(connection);
+    }
+
+    public void replay(TrafficReader reader) throws IOException {
+        Connection connection = start();
+        long previous = -1;
+        while (reader.next()) {
+            if (!reader.isInbound())
+                continue;
+            long gap = previous >= 0 ? reader.getTime() - previous : 0;
+            previous = reader.getTime();
+            handle(connection, reader.getLine(), gap);
+        }
+        finish(connection);
+    }
+
+    public void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    private void finish(Connection connection) {
+        connection.replay("", -1);
+        elapsed = System.nanoTime() - elapsed;
+        bot.stopReplay();
+    }
+
+    private void handle(Connection connection, String line, long gap) {
+        lines++;
+        if (realTime && gap > 0)
+            try {
+                TimeUnit.NANOSECONDS.sleep(gap);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        try {
+            connection.replay(line, gap);
+        } catch (Exception e) {
+            errors.add(e);
+            bot.logError("[Replay::handle] An exception occurred while replaying '%s' (%s)", line, e.toString());
+        }
+    }
+
+    private Connection start() throws IOException {
+        output.getBuffer().setLength(0);
+        errors.clear();
+        lines = 0;
+        elapsed = System.nanoTime();
+        return bot.startReplay(output);
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean realTime = args.length > 1 && args[0].equals("-t");
+        if (args.length == 0 || args.length > 1 && !realTime) {
+            System.err.println("Usage: java com.archebot.Replay [-t] path");
+            return;
+        }
+        String path = args[args.length - 1];
+        ArcheBot bot = new ArcheBot("ArcheBot", "replay");
+        bot.getConfiguration().setValue(Property.enableLogging, false);
+        Replay replay = new Replay(bot);
+        replay.setRealTime(realTime);
+        if (TrafficJournal.getSegments(path).isEmpty())
+            replay.replay(new File(path));
+        else
+            try (TrafficReader reader = new TrafficReader(path)) {
+                replay.replay(reader);
+            }
+        double seconds = replay.getElapsedTime() / 1e9;
+        System.out.printf("Replayed %d lines in %.3f seconds (%.0f lines/second), sent %d lines, %d errors%n", replay.getLines(), seconds, replay.getLines() / seconds, replay.getOutput().size(), replay.getErrors().size());
+    }
+
+    private static long parseTime(String time) {
+        String[] parts = time.split(":");
+        if (parts.length != 4)
+            return -1;
+        try {
+            return ((Long.parseLong(parts[0]) * 60 + Long.parseLong(parts[1])) * 60 + Long.parseLong(parts[2])) * 1000 + Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
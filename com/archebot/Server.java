@@ -22,6 +22,7 @@ public class Server implements Comparable<Server> {
     private final TreeMap<Character, ModeType> modes = new TreeMap<>();
     private final TreeSet<Character> userModes = new TreeSet<>();
     private final TreeSet<Character> valueModes = new TreeSet<>();
+    private final TreeSet<Character> removalValueModes = new TreeSet<>();
     private final HashMap<Character, Character> prefixes = new HashMap<>();
     private String description = "";
     private String version = "";
@@ -32,6 +33,8 @@ public class Server implements Comparable<Server> {
     }
 
     public void debug() {
+        if (!bot.isLogging(LogLevel.info))
+            return;
         bot.log(name);
         if (!description.isEmpty())
             bot.log("   Description: " + description);
@@ -47,6 +50,27 @@ public class Server implements Comparable<Server> {
         bot.log("   Data types: %d known", data.size());
     }
 
+    public String fold(String name) {
+        String mapping = isDataType("CASEMAPPING") ? getData("CASEMAPPING") : "rfc1459";
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c >= 'A' && c <= 'Z')
+                chars[i] = (char) (c + 32);
+            else if (!mapping.equalsIgnoreCase("ascii")) {
+                if (c == '[')
+                    chars[i] = '{';
+                else if (c == ']')
+                    chars[i] = '}';
+                else if (c == '\\')
+                    chars[i] = '|';
+                else if (c == '~' && mapping.equalsIgnoreCase("rfc1459"))
+                    chars[i] = '^';
+            }
+        }
+        return new String(chars);
+    }
+
     public ArcheBot getBot() {
         return bot;
     }
@@ -75,6 +99,13 @@ public class Server implements Comparable<Server> {
         return new TreeSet<>(modes.keySet());
     }
 
+    public int getModesLimit() {
+        if (!isDataType("MODES"))
+            return 3;
+        String limit = getData("MODES");
+        return limit.isEmpty() ? 0 : Integer.parseInt(limit);
+    }
+
     public ModeType getModeType(char mode) throws UnknownModeException {
         if (supportsMode(mode))
             return modes.get(mode);
@@ -101,10 +132,19 @@ public class Server implements Comparable<Server> {
         return version;
     }
 
+    public boolean isChannel(String name) {
+        String types = isDataType("CHANTYPES") ? getData("CHANTYPES") : "#&";
+        return !name.isEmpty() && types.indexOf(name.charAt(0)) >= 0;
+    }
+
     public boolean isDataType(String type) {
         return data.containsKey(type.toLowerCase());
     }
 
+    public boolean isRemovalValueMode(char mode) {
+        return removalValueModes.contains(mode);
+    }
+
     public boolean isValueMode(char mode) {
         return valueModes.contains(mode);
     }
@@ -121,6 +161,10 @@ public class Server implements Comparable<Server> {
         return userModes.contains(mode);
     }
 
+    public boolean supportsWhox() {
+        return isDataType("WHOX");
+    }
+
     @Override
     public int compareTo(Server server) {
         return name.compareToIgnoreCase(server.name);
@@ -147,6 +191,10 @@ public class Server implements Comparable<Server> {
         prefixes.put(prefix, mode);
     }
 
+    protected void addRemovalValueMode(char mode) {
+        removalValueModes.add(mode);
+    }
+
     protected void addUserMode(char mode) {
         userModes.add(mode);
     }
@@ -0,0 +1,186 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.util.*;
+
+/**
+ * Keeps channel and user information up to date without flooding the outgoing queue. Channels are synchronized with a
+ * single WHO request (using WHOX when the server advertises it), users joining a channel that is already being
+ * synchronized are skipped, and users whose information is still current are never looked up again. Lookups for
+ * users with outdated information are collected until the handler thread is idle, and a channel with many of them
+ * is refreshed with one WHO rather than a WHOIS per user.
+ * WHO and NAMES replies are buffered until the end of their burst, then applied to the channels in a single pass.
+ */
+final class Synchronizer {
+
+    private static final int WHO_THRESHOLD = 5;
+    private final ArcheBot bot;
+    private final Connection connection;
+    private final Queries queries;
+    private final HashSet<String> synchronizing = new HashSet<>();
+    private final LinkedHashMap<String, LinkedHashSet<User>> outdated = new LinkedHashMap<>();
+    private final HashMap<String, ArrayList<Entry>> names = new HashMap<>();
+    private final ArrayList<Entry> who = new ArrayList<>();
+
+    Synchronizer(ArcheBot bot, Connection connection, Queries queries) {
+        this.bot = bot;
+        this.connection = connection;
+        this.queries = queries;
+    }
+
+    void applyNames(String channel) {
+        ArrayList<Entry> entries = names.remove(channel.toLowerCase());
+        ChannelMap channels = bot.getChannelMap();
+        if (entries == null || !channels.contains(channel))
+            return;
+        HashMap<User, HashSet<Character>> users = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (Entry entry : entries) {
+            User user = bot.getUser(entry.nick);
+            user.setKnown(true);
+            users.put(user, toModes(entry.flags));
+        }
+        channels.getChannel(channel).addUsers(users);
+    }
+
+    @SuppressWarnings("unchecked")
+    void applyWho(String label, String mask) {
+        ChannelMap channels = bot.getChannelMap();
+        HashMap<String, HashMap<User, HashSet<Character>>> additions = new HashMap<>();
+        long time = System.currentTimeMillis();
+        for (Entry entry : who) {
+            User user = bot.getUser(entry.nick);
+            user.setLogin(entry.login);
+            user.setHostmask(entry.hostmask);
+            user.setRealname(entry.realname);
+            if (entry.server != null)
+                user.setServer(bot.getServer(entry.server));
+            if (entry.account != null)
+                connection.rekey(user, () -> user.setNickservLogin(entry.account.equals("0") ? null : entry.account));
+            user.setKnown(true);
+            user.setUpdateTime(time);
+            queries.addWho(label, mask, user);
+            String channel = entry.channel.toLowerCase();
+            if (channels.contains(channel)) {
+                if (!additions.containsKey(channel))
+                    additions.put(channel, new HashMap<>());
+                additions.get(channel).put(user, toModes(entry.flags));
+            }
+        }
+        who.clear();
+        additions.forEach((c, u) -> channels.getChannel(c).addUsers(u));
+        if (synchronizing.remove(mask.toLowerCase()) && channels.contains(mask))
+            bot.getHandler().onChannelSynced(bot, channels.getChannel(mask));
+    }
+
+    void flush() {
+        if (outdated.isEmpty())
+            return;
+        ChannelMap channels = bot.getChannelMap();
+        HashSet<User> requested = new HashSet<>();
+        for (Map.Entry<String, LinkedHashSet<User>> entry : outdated.entrySet()) {
+            if (!channels.contains(entry.getKey()) || isSynchronizing(entry.getKey()))
+                continue;
+            Channel channel = channels.getChannel(entry.getKey());
+            LinkedHashSet<User> users = entry.getValue();
+            users.removeIf(u -> !channel.contains(u) || isCurrent(u));
+            if (users.size() >= WHO_THRESHOLD)
+                synchronize(channel, false);
+            else
+                for (User user : users)
+                    if (requested.add(user))
+                        user.whois();
+        }
+        outdated.clear();
+    }
+
+    void forget(Channel channel) {
+        synchronizing.remove(channel.getName().toLowerCase());
+        outdated.remove(channel.getName().toLowerCase());
+        names.remove(channel.getName().toLowerCase());
+    }
+
+    boolean isCurrent(User user) {
+        return System.currentTimeMillis() - user.getUpdateTime() < bot.getConfiguration().getInteger(Property.userExpiry);
+    }
+
+    boolean isSynchronizing(String channel) {
+        return synchronizing.contains(channel.toLowerCase());
+    }
+
+    void receiveNames(String channel, String list) {
+        String key = channel.toLowerCase();
+        if (!names.containsKey(key))
+            names.put(key, new ArrayList<>());
+        ArrayList<Entry> entries = names.get(key);
+        Server server = bot.getServer();
+        for (String name : list.split(" ")) {
+            int i = 0;
+            while (i < name.length() && server != null && server.supportsPrefix(name.charAt(i)))
+                i++;
+            if (i < name.length())
+                entries.add(new Entry(channel, name.substring(i), name.substring(0, i)));
+        }
+    }
+
+    void receiveWho(String channel, String nick, String login, String hostmask, String server, String flags, String account, String realname) {
+        Entry entry = new Entry(channel, nick, flags);
+        entry.login = login;
+        entry.hostmask = hostmask;
+        entry.server = server;
+        entry.account = account;
+        entry.realname = realname;
+        who.add(entry);
+    }
+
+    void synchronize(Channel channel, boolean modes) {
+        String name = channel.getName();
+        if (synchronizing.add(name.toLowerCase()))
+            queries.who(name);
+        if (modes)
+            bot.send("MODE " + name);
+    }
+
+    void update(Channel channel, User user) {
+        String name = channel.getName().toLowerCase();
+        if (isSynchronizing(name) || isCurrent(user))
+            return;
+        if (!outdated.containsKey(name))
+            outdated.put(name, new LinkedHashSet<>());
+        outdated.get(name).add(user);
+    }
+
+    private HashSet<Character> toModes(String flags) {
+        HashSet<Character> modes = new HashSet<>();
+        Server server = bot.getServer();
+        if (server != null)
+            for (int i = 0; i < flags.length(); i++)
+                if (server.supportsPrefix(flags.charAt(i)))
+                    modes.add(server.getMode(flags.charAt(i)));
+        return modes;
+    }
+
+    private static final class Entry {
+
+        private final String channel;
+        private final String nick;
+        private final String flags;
+        private String login;
+        private String hostmask;
+        private String server;
+        private String account;
+        private String realname;
+
+        private Entry(String channel, String nick, String flags) {
+            this.channel = channel;
+            this.nick = nick;
+            this.flags = flags;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeMap;
+
+/**
+ * Records every raw line sent to and received from the server, exactly as it was on the wire, in memory mapped segment
+ * files. Segments are allocated at a fixed size and named with an increasing number after the journal's path, such as
+ * bot.000001.traffic, and only the newest segments are kept. Each record holds its length, a timestamp in nanoseconds
+ * since the epoch, its direction and the line encoded as UTF-8; the length is written last, so a reader never sees a
+ * partly written record. Empty lines are not recorded, since a length of zero marks the end of a segment. Lines are
+ * encoded straight into the mapped segment, so recording allocates nothing.
+ *
+ * @see TrafficReader
+ */
+public class TrafficJournal implements Closeable {
+
+    public static final byte INBOUND = '<';
+    public static final byte OUTBOUND = '>';
+    public static final String EXTENSION = ".traffic";
+    public static final int HEADER_SIZE = 13;
+    private static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    private static final int DEFAULT_SEGMENTS = 16;
+    private final String path;
+    private final int segmentSize;
+    private final int segments;
+    private final long epoch;
+    private final long origin;
+    private MappedByteBuffer buffer;
+    private int index;
+
+    public TrafficJournal(String path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENTS);
+    }
+
+    public TrafficJournal(String path, int segmentSize, int segments) throws IOException {
+        if (segmentSize < 1 << 16)
+            throw new IllegalArgumentException("[TrafficJournal::TrafficJournal] Segments must be at least 64KB");
+        this.path = path;
+        this.segmentSize = segmentSize;
+        this.segments = Math.max(segments, 1);
+        epoch = System.currentTimeMillis() * 1000000;
+        origin = System.nanoTime();
+        TreeMap<Integer, File> existing = getSegments(path);
+        index = existing.isEmpty() ? 0 : existing.lastKey();
+        rotate();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public synchronized void write(byte direction, String line) {
+        if (buffer == null || line.isEmpty())
+            return;
+        int size = HEADER_SIZE + line.length() * 3 + 4;
+        if (buffer.remaining() < size && (size > segmentSize || !tryRotate()))
+            return;
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putLong(epoch + System.nanoTime() - origin);
+        buffer.put(direction);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80)
+                buffer.put((byte) c);
+            else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < line.length() && Character.isLowSurrogate(line.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, line.charAt(++i));
+                buffer.put((byte) (0xf0 | code >> 18));
+                buffer.put((byte) (0x80 | code >> 12 & 0x3f));
+                buffer.put((byte) (0x80 | code >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | code & 0x3f));
+            } else {
+                buffer.put((byte) (0xe0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+        buffer.putInt(start, buffer.position() - start - HEADER_SIZE);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        index++;
+        File file = getFile(path, index);
+        try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+            data.setLength(0);
+            data.setLength(segmentSize);
+            buffer = data.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        TreeMap<Integer, File> existing = getSegments(path);
+        while (existing.size() > segments)
+            existing.pollFirstEntry().getValue().delete();
+    }
+
+    private boolean tryRotate() {
+        try {
+            buffer.force();
+            rotate();
+            return true;
+        } catch (IOException e) {
+            buffer = null;
+            return false;
+        }
+    }
+
+    static File getFile(String path, int index) {
+        return new File(String.format("%s.%06d%s", path, index, EXTENSION));
+    }
+
+    static TreeMap<Integer, File> getSegments(String path) {
+        TreeMap<Integer, File> segments = new TreeMap<>();
+        File prefix = new File(path);
+        File directory = prefix.getAbsoluteFile().getParentFile();
+        String name = prefix.getName() + ".";
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files != null)
+            for (File file : files) {
+                String n = file.getName();
+                if (n.startsWith(name) && n.endsWith(EXTENSION)) {
+                    String number = n.substring(name.length(), n.length() - EXTENSION.length());
+                    if (!number.isEmpty() && number.chars().allMatch(Character::isDigit) && number.length() < 10)
+                        segments.put(Integer.parseInt(number), file);
+                }
+            }
+        return segments;
+    }
+}
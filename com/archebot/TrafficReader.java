@@ -0,0 +1,132 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.TreeMap;
+
+/**
+ * Reads the records of a traffic journal in order, across every segment that is still kept. When following, the
+ * reader waits for records that have not yet been written instead of stopping at the end of the newest segment.
+ * This class can also be run on its own to print or tail a journal:
+ * <pre>java com.archebot.TrafficReader [-f] path</pre>
+ *
+ * @see TrafficJournal
+ */
+public class TrafficReader implements Closeable {
+
+    private static final long POLL_DELAY = 50;
+    private final String path;
+    private final boolean follow;
+    private MappedByteBuffer buffer;
+    private int index;
+    private long time;
+    private byte direction;
+    private String line;
+    private boolean open = true;
+
+    public TrafficReader(String path) {
+        this(path, false);
+    }
+
+    public TrafficReader(String path, boolean follow) {
+        this.path = path;
+        this.follow = follow;
+        TreeMap<Integer, File> segments = TrafficJournal.getSegments(path);
+        index = segments.isEmpty() ? 0 : segments.firstKey() - 1;
+    }
+
+    public byte getDirection() {
+        return direction;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isInbound() {
+        return direction == TrafficJournal.INBOUND;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return true if there is another record, or false once the journal has been read and the reader is not following
+     */
+    public boolean next() throws IOException {
+        while (open) {
+            if (buffer != null && buffer.remaining() >= TrafficJournal.HEADER_SIZE) {
+                int length = buffer.getInt(buffer.position());
+                if (length > 0) {
+                    buffer.position(buffer.position() + 4);
+                    time = buffer.getLong();
+                    direction = buffer.get();
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    line = new String(bytes, StandardCharsets.UTF_8);
+                    return true;
+                }
+            }
+            TreeMap<Integer, File> segments = TrafficJournal.getSegments(path);
+            Integer next = segments.higherKey(index);
+            if (next != null) {
+                index = next;
+                buffer = map(segments.get(next));
+            } else if (follow)
+                try {
+                    Thread.sleep(POLL_DELAY);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            else
+                return false;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        buffer = null;
+    }
+
+    @Override
+    public String toString() {
+        return Instant.ofEpochSecond(time / 1000000000, time % 1000000000) + " " + (char) direction + " " + line;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean follow = args.length > 1 && args[0].equals("-f");
+        if (args.length == 0 || args.length > 1 && !follow) {
+            System.err.println("Usage: java com.archebot.TrafficReader [-f] path");
+            return;
+        }
+        try (TrafficReader reader = new TrafficReader(args[args.length - 1], follow)) {
+            while (reader.next())
+                System.out.println(reader);
+        }
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -19,20 +19,27 @@ import java.util.stream.Collectors;
 public class User implements Comparable<User> {
 
     protected final ArcheBot bot;
-    private final HashMap<Permission, Boolean> permissions = new HashMap<>();
+    private final PermissionSet permissions = new PermissionSet();
+    private final HashMap<String, PermissionSet> channelPermissions = new HashMap<>();
     private final TreeSet<Character> modes = new TreeSet<>();
     private boolean known = false;
+    private long updateTime = 0;
     private String login = "";
     private String hostmask = "";
     private String realname = "";
     private Server server;
     private String nick;
     private String nickservLogin;
+    private PermissionSet hostmaskPermissions;
+    private HostmaskMatcher matcher;
+    private int matcherVersion;
+    private boolean permissionsChanged = false;
 
     public User(ArcheBot bot, String nick) {
         this.bot = bot;
         this.nick = nick;
         givePermission(Permission.DEFAULT);
+        permissionsChanged = false;
     }
 
     public void action(String action, Object... objects) throws ConnectionStateException {
@@ -45,10 +52,14 @@ public class User implements Comparable<User> {
 
     public void clearPermissions() {
         permissions.clear();
+        channelPermissions.clear();
         givePermission(Permission.DEFAULT);
+        permissionsChanged = true;
     }
 
     public void debug() {
+        if (!bot.isLogging(LogLevel.info))
+            return;
         bot.log(getIdentity());
         if (!realname.isEmpty())
             bot.log("   Real name: " + realname);
@@ -57,7 +68,7 @@ public class User implements Comparable<User> {
         if (isIdentified())
             bot.log("   Nickserv login: " + nickservLogin);
         bot.log("   Known: " + known);
-        bot.log("   Permissions: " + StringUtils.compact(permissions.keySet()));
+        bot.log("   Permissions: " + StringUtils.compact(getPermissions()));
         if (modes.size() > 0)
             bot.log("   Modes: " + StringUtils.compact(modes, ""));
     }
@@ -91,11 +102,21 @@ public class User implements Comparable<User> {
     }
 
     public TreeSet<Permission> getPermissions() {
-        return new TreeSet<>(permissions.keySet());
+        TreeSet<Permission> set = permissions.getPermissions();
+        set.addAll(getHostmaskPermissions().getPermissions());
+        return set;
+    }
+
+    public TreeSet<Permission> getPermissions(Channel channel) {
+        TreeSet<Permission> set = getPermissions();
+        PermissionSet scoped = channelPermissions.get(getBot().fold(channel.getName()));
+        if (scoped != null)
+            set.addAll(scoped.getPermissions());
+        return set;
     }
 
     public TreeSet<Permission> getPermissions(Predicate<Permission> predicate) {
-        return new TreeSet<>(permissions.keySet().stream().filter(predicate).collect(Collectors.toSet()));
+        return new TreeSet<>(getPermissions().stream().filter(predicate).collect(Collectors.toSet()));
     }
 
     public String getRealname() {
@@ -106,12 +127,25 @@ public class User implements Comparable<User> {
         return server;
     }
 
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
     public void givePermission(String permission) {
-        givePermission(Permission.get(permission), true);
+        givePermission(Permission.get(permission));
     }
 
     public void givePermission(Permission permission) {
-        givePermission(permission, true);
+        permissions.give(permission);
+        permissionsChanged = true;
+    }
+
+    public void givePermission(Channel channel, String permission) {
+        givePermission(channel, Permission.get(permission));
+    }
+
+    public void givePermission(Channel channel, Permission permission) {
+        givePermission(channel.getName(), permission);
     }
 
     public boolean hasPermission(String permission) {
@@ -119,7 +153,18 @@ public class User implements Comparable<User> {
     }
 
     public boolean hasPermission(Permission permission) {
-        return permissions.containsKey(permission);
+        return permissions.has(permission) || getHostmaskPermissions().has(permission);
+    }
+
+    public boolean hasPermission(Channel channel, String permission) {
+        return hasPermission(channel, Permission.get(permission));
+    }
+
+    public boolean hasPermission(Channel channel, Permission permission) {
+        if (hasPermission(permission))
+            return true;
+        PermissionSet scoped = channelPermissions.get(getBot().fold(channel.getName()));
+        return scoped != null && scoped.has(permission);
     }
 
     public boolean hasMode(char mode) {
@@ -131,7 +176,12 @@ public class User implements Comparable<User> {
     }
 
     public boolean isIncluded(Permission permission) {
-        return hasPermission(permission) && permissions.get(permission);
+        return permissions.isGranted(permission);
+    }
+
+    public boolean isIncluded(Channel channel, Permission permission) {
+        PermissionSet scoped = channelPermissions.get(getBot().fold(channel.getName()));
+        return scoped != null && scoped.isGranted(permission);
     }
 
     public boolean isKnown() {
@@ -152,11 +202,26 @@ public class User implements Comparable<User> {
 
     public void removePermission(Permission permission) {
         permissions.remove(permission);
-        permission.getSubPermissions(p -> hasPermission(p) && !isIncluded(p)).forEach(this::removePermission);
+        permissionsChanged = true;
+    }
+
+    public void removePermission(Channel channel, String permission) {
+        removePermission(channel, Permission.get(permission));
+    }
+
+    public void removePermission(Channel channel, Permission permission) {
+        String name = getBot().fold(channel.getName());
+        PermissionSet scoped = channelPermissions.get(name);
+        if (scoped != null) {
+            scoped.remove(permission);
+            permissionsChanged = true;
+            if (scoped.isEmpty())
+                channelPermissions.remove(name);
+        }
     }
 
-    public void whois() {
-        bot.send("WHOIS " + nick);
+    public void whois() throws ConnectionStateException {
+        bot.whois(this);
     }
 
     @Override
@@ -183,6 +248,7 @@ public class User implements Comparable<User> {
 
     protected void setHostmask(String hostmask) {
         this.hostmask = hostmask;
+        hostmaskPermissions = null;
     }
 
     protected void setKnown(boolean known) {
@@ -191,10 +257,12 @@ public class User implements Comparable<User> {
 
     protected void setLogin(String login) {
         this.login = login;
+        hostmaskPermissions = null;
     }
 
     protected void setNick(String nick) {
         this.nick = nick;
+        hostmaskPermissions = null;
     }
 
     protected void setNickservLogin(String nickservLogin) {
@@ -209,9 +277,45 @@ public class User implements Comparable<User> {
         this.server = server;
     }
 
-    private void givePermission(Permission permission, boolean included) {
-        permissions.put(permission, included);
-        permission.getSubPermissions(p -> !hasPermission(p)).forEach(p -> givePermission(p, false));
+    protected void setUpdateTime(long updateTime) {
+        this.updateTime = updateTime;
+    }
+
+    HashMap<String, TreeSet<Permission>> getChannelGrants() {
+        HashMap<String, TreeSet<Permission>> grants = new HashMap<>();
+        channelPermissions.forEach((c, s) -> grants.put(c, s.getGrants()));
+        return grants;
+    }
+
+    void givePermission(String channel, Permission permission) {
+        String name = getBot().fold(channel);
+        if (!channelPermissions.containsKey(name))
+            channelPermissions.put(name, new PermissionSet());
+        channelPermissions.get(name).give(permission);
+        permissionsChanged = true;
+    }
+
+    String getPermissionKey() {
+        return isIdentified() ? "account." + nickservLogin.toLowerCase() : nick.toLowerCase();
+    }
+
+    boolean hasChangedPermissions() {
+        return permissionsChanged;
+    }
+
+    void setPermissionsChanged(boolean permissionsChanged) {
+        this.permissionsChanged = permissionsChanged;
+    }
+
+    private PermissionSet getHostmaskPermissions() {
+        HostmaskMatcher current = getBot().getConfiguration().getHostmaskMatcher();
+        int version = current.getVersion();
+        if (hostmaskPermissions == null || matcher != current || matcherVersion != version) {
+            hostmaskPermissions = current.match(nick, login, hostmask);
+            matcher = current;
+            matcherVersion = version;
+        }
+        return hostmaskPermissions;
     }
 
     public static String parseNick(String identity) {
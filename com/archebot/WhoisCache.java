@@ -0,0 +1,139 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+import com.archebot.exceptions.ConnectionStateException;
+import com.archebot.exceptions.UnknownUserException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Remembers the results of WHOIS requests for as long as the whoisExpiry property allows. Requests for a nick that
+ * already has a current result are answered from the cache, and requests for a nick that is already being looked up
+ * are merged into the one in-flight query until it is answered or the queryTimeout property runs out. Results are
+ * keyed by the nick as folded by the server's case mapping, and are discarded when the nick changes or quits. Futures
+ * waiting on a lookup are completed when it finishes, fails, or goes unanswered for longer than the queryTimeout
+ * property allows.
+ */
+final class WhoisCache {
+
+    private final ArcheBot bot;
+    private final HashMap<String, WhoisResult> results = new HashMap<>();
+    private final HashMap<String, WhoisResult> pending = new HashMap<>();
+    private final HashMap<String, Long> requests = new HashMap<>();
+    private final HashMap<String, CompletableFuture<WhoisResult>> futures = new HashMap<>();
+
+    WhoisCache(ArcheBot bot) {
+        this.bot = bot;
+    }
+
+    synchronized CompletableFuture<WhoisResult> await(String nick) {
+        String key = bot.fold(nick);
+        if (!futures.containsKey(key))
+            futures.put(key, new CompletableFuture<>());
+        return futures.get(key);
+    }
+
+    void cancel() {
+        ArrayList<CompletableFuture<WhoisResult>> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(futures.values());
+            futures.clear();
+            pending.clear();
+            requests.clear();
+        }
+        cancelled.forEach(f -> f.completeExceptionally(new ConnectionStateException(State.disconnecting, "Disconnected before the server replied to [WHOIS]")));
+    }
+
+    WhoisResult complete(String nick) {
+        WhoisResult result;
+        CompletableFuture<WhoisResult> future;
+        synchronized (this) {
+            String key = bot.fold(nick);
+            result = pending.remove(key);
+            requests.remove(key);
+            future = futures.remove(key);
+            if (result != null) {
+                result.setTime(System.currentTimeMillis());
+                results.put(key, result);
+            }
+        }
+        if (future != null)
+            if (result != null)
+                future.complete(result);
+            else
+                future.completeExceptionally(new UnknownUserException(nick));
+        return result;
+    }
+
+    void expire() {
+        ArrayList<CompletableFuture<WhoisResult>> expired = new ArrayList<>();
+        synchronized (this) {
+            if (requests.isEmpty())
+                return;
+            long time = System.currentTimeMillis() - bot.getConfiguration().getInteger(Property.queryTimeout);
+            Iterator<Map.Entry<String, Long>> iterator = requests.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getValue() <= time) {
+                    iterator.remove();
+                    pending.remove(entry.getKey());
+                    if (futures.containsKey(entry.getKey()))
+                        expired.add(futures.remove(entry.getKey()));
+                }
+            }
+        }
+        expired.forEach(f -> f.completeExceptionally(new TimeoutException("No reply received for [WHOIS]")));
+    }
+
+    synchronized void fail(String nick) {
+        pending.remove(bot.fold(nick));
+    }
+
+    synchronized WhoisResult get(String nick) {
+        String key = bot.fold(nick);
+        WhoisResult result = results.get(key);
+        if (result == null)
+            return null;
+        if (isExpired(result.getTime(), Property.whoisExpiry)) {
+            results.remove(key);
+            return null;
+        }
+        return result;
+    }
+
+    synchronized void invalidate(String nick) {
+        results.remove(bot.fold(nick));
+    }
+
+    synchronized WhoisResult receive(String nick) {
+        String key = bot.fold(nick);
+        if (!pending.containsKey(key))
+            pending.put(key, new WhoisResult(nick));
+        return pending.get(key);
+    }
+
+    synchronized boolean request(String nick) {
+        String key = bot.fold(nick);
+        Long time = requests.get(key);
+        if (time != null && !isExpired(time, Property.queryTimeout))
+            return false;
+        requests.put(key, System.currentTimeMillis());
+        return true;
+    }
+
+    private boolean isExpired(long time, Property expiry) {
+        return System.currentTimeMillis() - time >= bot.getConfiguration().getInteger(expiry);
+    }
+}
@@ -0,0 +1,103 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot;
+
+public class WhoisResult {
+
+    private final String nick;
+    private String login = "";
+    private String hostmask = "";
+    private String realname = "";
+    private String nickservLogin;
+    private Server server;
+    private long time = -1;
+
+    public WhoisResult(String nick) {
+        this.nick = nick;
+    }
+
+    public String getHostmask() {
+        return hostmask;
+    }
+
+    public String getIdentity() {
+        return nick + (login.isEmpty() ? "" : "!" + login) + (hostmask.isEmpty() ? "" : "@" + hostmask);
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getNick() {
+        return nick;
+    }
+
+    public String getNickservLogin() {
+        return nickservLogin;
+    }
+
+    public String getRealname() {
+        return realname;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isComplete() {
+        return time >= 0;
+    }
+
+    public boolean isIdentified() {
+        return nickservLogin != null;
+    }
+
+    @Override
+    public String toString() {
+        return getIdentity();
+    }
+
+    protected void apply(User user) {
+        user.setLogin(login);
+        user.setHostmask(hostmask);
+        user.setRealname(realname);
+        user.setNickservLogin(nickservLogin);
+        if (server != null)
+            user.setServer(server);
+        user.setUpdateTime(time);
+    }
+
+    protected void setHostmask(String hostmask) {
+        this.hostmask = hostmask;
+    }
+
+    protected void setLogin(String login) {
+        this.login = login;
+    }
+
+    protected void setNickservLogin(String nickservLogin) {
+        this.nickservLogin = nickservLogin;
+    }
+
+    protected void setRealname(String realname) {
+        this.realname = realname;
+    }
+
+    protected void setServer(Server server) {
+        this.server = server;
+    }
+
+    protected void setTime(long time) {
+        this.time = time;
+    }
+}
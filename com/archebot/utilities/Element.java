@@ -11,7 +11,11 @@ package com.archebot.utilities;
 import com.archebot.exceptions.ReadonlyException;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.TreeSet;
 import java.util.function.Predicate;
@@ -33,7 +37,14 @@ public class Element implements Comparable<Element>, Iterable<Element> {
 
     public static final String VERSION = "1.4.1";
     private final String tag;
-    private final TreeSet<Element> children = new TreeSet<>();
+    private final String key;
+    private final String prefix;
+    private final long number;
+    private final ArrayList<Element> children = new ArrayList<>();
+    private final HashMap<String, ArrayList<Element>> tags = new HashMap<>();
+    private ArrayList<Element> sorted;
+    private ElementBinary source;
+    private int node;
     private String content;
     private boolean readonly = false;
     private int indent = 2;
@@ -44,10 +55,23 @@ public class Element implements Comparable<Element>, Iterable<Element> {
     }
 
     public Element(String tag, String content) {
-        if (!tag.matches("#|[\\w.-]+"))
+        if (!isTag(tag))
             throw new IllegalArgumentException("Error creating '" + tag + "': Illegal characters in tag.");
         this.tag = tag;
         this.content = content;
+        key = tag.toLowerCase();
+        int i = tag.length();
+        while (i > 0 && Character.isDigit(tag.charAt(i - 1)))
+            i--;
+        if (i > 0 && i < tag.length() && tag.charAt(i - 1) == '-')
+            i--;
+        if (i < tag.length() && tag.length() - i <= 18) {
+            prefix = key.substring(0, i);
+            number = Long.parseLong(tag.substring(i));
+        } else {
+            prefix = null;
+            number = 0;
+        }
     }
 
     public void addChild(Element element) {
@@ -55,8 +79,18 @@ public class Element implements Comparable<Element>, Iterable<Element> {
             throw new ReadonlyException(this);
         if (element.index != -1)
             throw new IllegalArgumentException("Error modifying '" + tag + "': Element '" + element.tag + "' already has parent.");
+        load();
+        add(element);
+    }
+
+    void add(Element element) {
+        if (!tags.containsKey(element.key))
+            tags.put(element.key, new ArrayList<>());
+        ArrayList<Element> list = tags.get(element.key);
+        element.index = list.size();
+        list.add(element);
         children.add(element);
-        element.index = size(element.tag) - 1;
+        sorted = null;
     }
 
     public Element getChild(String tag) {
@@ -64,37 +98,24 @@ public class Element implements Comparable<Element>, Iterable<Element> {
     }
 
     public Element getChild(String tag, int index) {
-        if (tag.contains("/")) {
-            String[] split = tag.split("/", 2);
-            return getChild(split[0], index).getChild(split[1], index);
-        }
-        if (tag.contains(":")) {
-            String[] parts = tag.split(":", 2);
-            tag = parts[0];
-            if (parts[1].matches("-?\\d+"))
-                index = Integer.parseInt(parts[1]);
-        }
-        if (index >= 0) {
-            while (!isChild(tag, index))
-                addChild(new Element(tag));
-            for (Element child : children)
-                if (tag.equalsIgnoreCase(child.tag) && index == child.index)
-                    return child;
-        }
-        Element child = new Element(tag);
-        addChild(child);
-        return child;
+        if (isPath(tag))
+            return ElementPath.compile(tag).getChild(this, index);
+        return getDirectChild(tag, index);
     }
 
     public TreeSet<Element> getChildren() {
+        load();
         return new TreeSet<>(children);
     }
 
     public TreeSet<Element> getChildren(String tag) {
-        return getChildren(e -> e.getTag().equalsIgnoreCase(tag));
+        load();
+        ArrayList<Element> list = tags.get(tag.toLowerCase());
+        return list == null ? new TreeSet<>() : new TreeSet<>(list);
     }
 
     public TreeSet<Element> getChildren(Predicate<Element> predicate) {
+        load();
         return new TreeSet<>(children.stream().filter(predicate).collect(Collectors.toSet()));
     }
 
@@ -123,24 +144,15 @@ public class Element implements Comparable<Element>, Iterable<Element> {
     }
 
     public boolean isChild(String tag, int index) {
-        if (tag.contains("/")) {
-            String[] split = tag.split("/", 2);
-            return isChild(split[0], index) && getChild(split[0], index).isChild(split[1], index);
-        }
-        if (tag.contains(":")) {
-            String[] parts = tag.split(":", 2);
-            tag = parts[0];
-            if (parts[1].matches("\\d+"))
-                index = Integer.parseInt(parts[1]);
-        }
-        for (Element child : children)
-            if (tag.equalsIgnoreCase(child.tag) && index == child.index)
-                return true;
-        return false;
+        if (isPath(tag))
+            return ElementPath.compile(tag).isChild(this, index);
+        return isDirectChild(tag, index);
     }
 
     public boolean isChild(Element element) {
-        return children.contains(element);
+        load();
+        ArrayList<Element> list = tags.get(element.key);
+        return list != null && element.index >= 0 && element.index < list.size() && list.get(element.index) == element;
     }
 
     public boolean isReadonly() {
@@ -152,47 +164,54 @@ public class Element implements Comparable<Element>, Iterable<Element> {
     }
 
     public void removeChild(String tag, int index) {
-        if (tag.contains("/")) {
-            String[] split = tag.split("/", 2);
-            if (isChild(split[0], index))
-                getChild(split[0], index).removeChild(split[1], index);
-        } else {
-            if (tag.contains(":")) {
-                String[] parts = tag.split(":", 2);
-                tag = parts[0];
-                if (parts[1].matches("\\d+"))
-                    index = Integer.parseInt(parts[1]);
-            }
-            for (Element child : getChildren(tag))
-                if (child.index == index) {
-                    child.index = -1;
-                    children.remove(child);
-                } else if (child.index > index)
-                    child.index--;
-        }
+        if (isPath(tag))
+            ElementPath.compile(tag).removeChild(this, index);
+        else
+            removeDirectChild(tag, index);
     }
 
     public void removeChild(Element element) {
         if (!isChild(element))
             throw new IllegalArgumentException("Error modifying '" + tag + "': Not parent of element '" + element.tag + "'.");
-        getChildren(e -> e.tag.equalsIgnoreCase(element.tag) && e.index > element.index).forEach(e -> e.index--);
-        element.index = -1;
+        ArrayList<Element> list = tags.get(element.key);
+        list.remove(element.index);
+        for (int i = element.index; i < list.size(); i++)
+            list.get(i).index = i;
+        if (list.isEmpty())
+            tags.remove(element.key);
         children.remove(element);
+        element.index = -1;
+        sorted = null;
     }
 
     public void removeChildren() {
+        load();
         for (Element child : children)
             child.index = -1;
         children.clear();
+        tags.clear();
+        sorted = null;
     }
 
     public void removeChildren(String tag) {
-        for (Element child : getChildren(tag)) {
-            child.index = -1;
-            children.remove(child);
+        load();
+        ArrayList<Element> list = tags.remove(tag.toLowerCase());
+        if (list != null) {
+            for (Element child : list)
+                child.index = -1;
+            children.removeAll(list);
+            sorted = null;
         }
     }
 
+    public ArrayList<Element> select(String path) {
+        return ElementPath.compile(path).select(this);
+    }
+
+    public ArrayList<Element> select(String path, Predicate<Element> predicate) {
+        return ElementPath.compile(path).select(this, predicate);
+    }
+
     public void setContent(String content) {
         if (readonly)
             throw new ReadonlyException(this);
@@ -212,14 +231,18 @@ public class Element implements Comparable<Element>, Iterable<Element> {
     }
 
     public int size() {
+        load();
         return children.size();
     }
 
     public int size(String tag) {
-        return size(e -> e.getTag().equalsIgnoreCase(tag));
+        load();
+        ArrayList<Element> list = tags.get(tag.toLowerCase());
+        return list == null ? 0 : list.size();
     }
 
     public int size(Predicate<Element> predicate) {
+        load();
         return (int) children.stream().filter(predicate).count();
     }
 
@@ -228,28 +251,34 @@ public class Element implements Comparable<Element>, Iterable<Element> {
     }
 
     public void write(String file) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(file.endsWith(".pml") ? file : file + ".pml"));
-        for (Element child : children)
-            write(writer, child, 0);
-        writer.close();
+        File text = new File(file.endsWith(".pml") ? file : file + ".pml");
+        File temp = new File(text.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            for (Element child : this)
+                write(writer, child, 0);
+        }
+        Files.move(temp.toPath(), text.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ElementBinary.write(this, text);
     }
 
     @SuppressWarnings("NullableProblems")
     @Override
     public int compareTo(Element element) {
-        if (tag.equalsIgnoreCase(element.tag))
+        if (key.equals(element.key))
             return Integer.compare(index, element.index);
-        if (tag.matches("^-?\\d+$") && element.tag.matches("^-?\\d+$"))
-            return Integer.compare(Integer.parseInt(tag), Integer.parseInt(element.tag));
-        if (tag.matches("^[\\w.-]+-?\\d+$") && element.tag.matches("^[\\w.-]+-?\\d+$")
-                && tag.replaceAll("-?\\d+$", "").equalsIgnoreCase(element.tag.replaceAll("-?\\d+$", "")))
-            return Integer.compare(Integer.parseInt(tag.replaceAll("[\\w.-]+", "")), Integer.parseInt(element.tag.replaceAll("[\\w.-]+", "")));
+        if (prefix != null && element.prefix != null && prefix.equals(element.prefix))
+            return Long.compare(number, element.number);
         return tag.compareToIgnoreCase(element.tag);
     }
 
     @Override
     public Iterator<Element> iterator() {
-        return children.iterator();
+        load();
+        if (sorted == null) {
+            sorted = new ArrayList<>(children);
+            Collections.sort(sorted);
+        }
+        return Collections.unmodifiableList(sorted).iterator();
     }
 
     @Override
@@ -257,53 +286,79 @@ public class Element implements Comparable<Element>, Iterable<Element> {
         return (readonly ? "(" : "<") + tag + (readonly ? ") " : "> ") + content;
     }
 
+    Element getDirectChild(String tag, int index) {
+        if (index >= 0) {
+            while (!isDirectChild(tag, index))
+                addChild(new Element(tag));
+            return tags.get(tag.toLowerCase()).get(index);
+        }
+        Element child = new Element(tag);
+        addChild(child);
+        return child;
+    }
+
+    ArrayList<Element> getDirectChildren(String tag) {
+        load();
+        ArrayList<Element> list = tags.get(tag.toLowerCase());
+        return list == null ? new ArrayList<>() : list;
+    }
+
+    boolean isDirectChild(String tag, int index) {
+        load();
+        ArrayList<Element> list = tags.get(tag.toLowerCase());
+        return list != null && index >= 0 && index < list.size();
+    }
+
+    void removeDirectChild(String tag, int index) {
+        if (isDirectChild(tag, index))
+            removeChild(tags.get(tag.toLowerCase()).get(index));
+    }
+
+    void setSource(ElementBinary source, int node) {
+        this.source = source;
+        this.node = node;
+    }
+
+    private void load() {
+        if (source != null) {
+            ElementBinary binary = source;
+            source = null;
+            binary.load(this, node);
+        }
+    }
+
     public static Element read(String file) throws IOException {
         String tag = file.contains(File.separator) ? file.substring(file.lastIndexOf(File.separatorChar)) : file;
         return read(file, tag.replaceAll("\\W", ""));
     }
 
     public static Element read(String filename, String tag) throws IOException {
-        Element element = new Element(tag);
         File file = new File(filename.endsWith(".pml") ? filename : filename + ".pml");
-        if (!file.exists())
+        Element element = ElementBinary.read(file, tag);
+        if (element != null)
             return element;
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        String line;
-        ArrayList<Element> parents = new ArrayList<>();
-        parents.add(element);
-        while ((line = reader.readLine()) != null) {
-            int indent = 0;
-            while (line.startsWith(" ")) {
-                indent++;
-                line = line.substring(1);
-            }
-            int i = 0, k = 1;
-            while (i < indent && k < parents.size() - 1)
-                i += parents.get(k++).indent;
-            if (indent - i <= 0 || parents.size() == 1)
-                k--;
-            Element parent = parents.get(k);
-            while (parents.size() - 1 > k)
-                parents.remove(k + 1);
-            String[] parts = line.split(" ", 2);
-            String t = parts[0];
-            if (!t.matches("[<\\(](#|&|[\\w.-]+)[>\\)]"))
-                continue;
-            String content = parts.length > 1 ? parts[1].replaceAll("^ ", "") : "";
-            if (t.matches("[<\\(]&[>\\)]"))
-                parent.content += "\n" + content;
-            else {
-                Element e = new Element(t.substring(1, t.length() - 1), content);
-                e.readonly = t.matches("\\((#|[\\w.-]+)\\)");
-                parent.addChild(e);
-                if (indent - i > 0)
-                    parent.indent = indent - i;
-                parents.add(e);
-            }
-        }
+        element = new Element(tag);
+        ElementReader.read(filename, new ElementBuilder(element));
         return element;
     }
 
+    private static boolean isPath(String tag) {
+        return tag.indexOf('/') >= 0 || tag.indexOf(':') >= 0;
+    }
+
+    static boolean isTag(String tag) {
+        if (tag.equals("#"))
+            return true;
+        if (tag.isEmpty())
+            return false;
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '.' || c == '-'))
+                return false;
+        }
+        return true;
+    }
+
     private static void write(BufferedWriter writer, Element element, int indent) throws IOException {
         String[] parts = element.content.split("\\n");
         writer.write(StringUtils.repeat(" ", indent));
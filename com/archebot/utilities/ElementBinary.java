@@ -0,0 +1,179 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot.utilities;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A binary copy of a PML file, kept next to it with a .pmlb extension so it can be loaded without parsing the text.
+ * The file holds a table of every distinct string followed by an array of fixed size nodes, with each node's children
+ * stored contiguously. It is memory mapped when read, and elements only create their children the first time they
+ * are accessed. The binary is only written when the text is written with Element.write, and records the modification
+ * time, size and CRC-32 checksum of the text it was written from. It is ignored whenever the text no longer matches, so
+ * an edit that keeps the size and lands within the file system's timestamp granularity is still noticed.
+ */
+final class ElementBinary {
+
+    private static final int MAGIC = 0x504d4c42;
+    private static final int FORMAT = 2;
+    private static final int NODE_SIZE = 20;
+    private final ByteBuffer buffer;
+    private final int[] offsets;
+    private final String[] strings;
+    private final int nodes;
+
+    private ElementBinary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int count = buffer.getInt(28);
+        offsets = new int[count];
+        strings = new String[count];
+        int position = 32;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = position;
+            position += 4 + buffer.getInt(position);
+        }
+        nodes = position + 4;
+    }
+
+    void load(Element element, int node) {
+        int first = buffer.getInt(nodes + node * NODE_SIZE + 12);
+        int count = buffer.getInt(nodes + node * NODE_SIZE + 16);
+        for (int i = first; i < first + count; i++) {
+            int position = nodes + i * NODE_SIZE;
+            int flags = buffer.getInt(position + 8);
+            Element child = new Element(getString(buffer.getInt(position)), getString(buffer.getInt(position + 4)));
+            child.setIndent(flags >>> 1);
+            child.setReadonly((flags & 1) == 1);
+            if (buffer.getInt(position + 16) > 0)
+                child.setSource(this, i);
+            element.add(child);
+        }
+    }
+
+    private String getString(int id) {
+        if (strings[id] == null) {
+            int position = offsets[id];
+            byte[] bytes = new byte[buffer.getInt(position)];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(position + 4);
+            slice.get(bytes);
+            strings[id] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings[id];
+    }
+
+    static Element read(File text, String tag) {
+        File file = getFile(text);
+        if (!text.exists() || !file.exists())
+            return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < 36 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT
+                    || buffer.getLong(8) != text.lastModified() || buffer.getLong(16) != text.length()
+                    || buffer.getInt(24) != checksum(text))
+                return null;
+            Element element = new Element(tag);
+            element.setSource(new ElementBinary(buffer), 0);
+            return element;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static boolean write(Element element, File text) {
+        ArrayList<Element> order = new ArrayList<>();
+        ArrayList<String> table = new ArrayList<>();
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] firsts = new int[16];
+        order.add(element);
+        for (int i = 0; i < order.size(); i++) {
+            if (i == firsts.length)
+                firsts = Arrays.copyOf(firsts, i * 2);
+            firsts[i] = order.size();
+            for (Element child : order.get(i))
+                order.add(child);
+        }
+        File file = getFile(text);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            int[] tags = new int[order.size()];
+            int[] contents = new int[order.size()];
+            for (int i = 0; i < order.size(); i++) {
+                tags[i] = getId(order.get(i).getTag(), table, ids);
+                contents[i] = getId(order.get(i).getContent(), table, ids);
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(text.lastModified());
+            out.writeLong(text.length());
+            out.writeInt(checksum(text));
+            out.writeInt(table.size());
+            for (String string : table) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(order.size());
+            for (int i = 0; i < order.size(); i++) {
+                Element node = order.get(i);
+                out.writeInt(tags[i]);
+                out.writeInt(contents[i]);
+                out.writeInt(node.getIndent() << 1 | (node.isReadonly() ? 1 : 0));
+                out.writeInt(firsts[i]);
+                out.writeInt(node.size());
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return false;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            temp.delete();
+            return false;
+        }
+    }
+
+    private static int checksum(File text) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[8192];
+        try (InputStream in = new FileInputStream(text)) {
+            int read;
+            while ((read = in.read(bytes)) > 0)
+                crc.update(bytes, 0, read);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static File getFile(File text) {
+        return new File(text.getPath() + "b");
+    }
+
+    private static int getId(String string, ArrayList<String> table, HashMap<String, Integer> ids) {
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = table.size();
+            table.add(string);
+            ids.put(string, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,56 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot.utilities;
+
+import java.util.ArrayList;
+
+/**
+ * Builds an element tree from the events of an ElementReader. Elements are only marked readonly once they have been
+ * ended, so readonly elements can still have children and continuation lines.
+ */
+public class ElementBuilder extends ElementListener {
+
+    private final Element root;
+    private final ArrayList<Element> open = new ArrayList<>();
+    private final ArrayList<Boolean> readonly = new ArrayList<>();
+
+    public ElementBuilder(String tag) {
+        this(new Element(tag));
+    }
+
+    public ElementBuilder(Element root) {
+        this.root = root;
+        open.add(root);
+    }
+
+    public Element getRoot() {
+        return root;
+    }
+
+    @Override
+    public void appendContent(String content) {
+        Element element = open.get(open.size() - 1);
+        element.setContent(element.getContent() + "\n" + content);
+    }
+
+    @Override
+    public void endElement(String tag, int indent) {
+        Element element = open.remove(open.size() - 1);
+        element.setIndent(indent);
+        element.setReadonly(readonly.remove(readonly.size() - 1));
+    }
+
+    @Override
+    public void startElement(String tag, String content, boolean readonly) {
+        Element element = new Element(tag, content);
+        open.get(open.size() - 1).addChild(element);
+        open.add(element);
+        this.readonly.add(readonly);
+    }
+}
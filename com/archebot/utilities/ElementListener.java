@@ -0,0 +1,41 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot.utilities;
+
+/**
+ * Receives the elements of a PML file as they are read by an ElementReader, without building a tree. Every element is
+ * started before any of its children and ended after all of them, so large files can be processed in constant memory.
+ * Override only the events you need; the default implementations do nothing.
+ */
+public class ElementListener {
+
+    /**
+     * Runs when a continuation line (&lt;&amp;&gt;) is read for the most recently started element that is still open.
+     *
+     * @param content the content of the line, to be appended after a line break
+     */
+    public void appendContent(String content) {}
+
+    /**
+     * Runs when an element and all of its children have been read.
+     *
+     * @param tag the tag of the element
+     * @param indent the indentation of the element's children relative to it
+     */
+    public void endElement(String tag, int indent) {}
+
+    /**
+     * Runs when the line for an element is read, before any of its children.
+     *
+     * @param tag the tag of the element
+     * @param content the content on the element's line
+     * @param readonly whether the element was marked readonly with parentheses
+     */
+    public void startElement(String tag, String content, boolean readonly) {}
+}
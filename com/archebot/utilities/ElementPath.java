@@ -0,0 +1,140 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot.utilities;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A compiled path to an element, such as "properties/nick" or "channels/channel:2". Each segment is a tag, optionally
+ * followed by a colon and an index; segments without an index use the index passed when the path is evaluated, so
+ * paths are parsed once and evaluated without any string work. Compiled paths are cached, so Element methods taking a
+ * path string only parse each distinct path once.
+ * When selecting, a segment without an index matches every child with that tag, and a * segment matches every child.
+ */
+public final class ElementPath {
+
+    private static final int CACHE_LIMIT = 1024;
+    private static final int INHERIT = Integer.MIN_VALUE;
+    private static final ConcurrentHashMap<String, ElementPath> cache = new ConcurrentHashMap<>();
+    private final String path;
+    private final String[] tags;
+    private final int[] indexes;
+
+    private ElementPath(String path) {
+        this.path = path;
+        String[] segments = path.split("/", -1);
+        tags = new String[segments.length];
+        indexes = new int[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            int colon = segment.indexOf(':');
+            indexes[i] = INHERIT;
+            if (colon >= 0) {
+                String index = segment.substring(colon + 1);
+                segment = segment.substring(0, colon);
+                if (isIndex(index))
+                    indexes[i] = Integer.parseInt(index);
+            }
+            tags[i] = segment;
+        }
+    }
+
+    public Element getChild(Element element) {
+        return getChild(element, 0);
+    }
+
+    public Element getChild(Element element, int index) {
+        for (int i = 0; i < tags.length; i++)
+            element = element.getDirectChild(tags[i], indexes[i] == INHERIT ? index : indexes[i]);
+        return element;
+    }
+
+    public boolean isChild(Element element) {
+        return isChild(element, 0);
+    }
+
+    public boolean isChild(Element element, int index) {
+        for (int i = 0; i < tags.length; i++) {
+            int n = indexes[i] == INHERIT || indexes[i] < 0 ? index : indexes[i];
+            if (!element.isDirectChild(tags[i], n))
+                return false;
+            element = element.getDirectChild(tags[i], n);
+        }
+        return true;
+    }
+
+    public void removeChild(Element element) {
+        removeChild(element, 0);
+    }
+
+    public void removeChild(Element element, int index) {
+        int last = tags.length - 1;
+        for (int i = 0; i < last; i++) {
+            int n = indexes[i] == INHERIT || indexes[i] < 0 ? index : indexes[i];
+            if (!element.isDirectChild(tags[i], n))
+                return;
+            element = element.getDirectChild(tags[i], n);
+        }
+        element.removeDirectChild(tags[last], indexes[last] == INHERIT || indexes[last] < 0 ? index : indexes[last]);
+    }
+
+    public ArrayList<Element> select(Element element) {
+        return select(element, e -> true);
+    }
+
+    public ArrayList<Element> select(Element element, Predicate<Element> predicate) {
+        ArrayList<Element> current = new ArrayList<>();
+        current.add(element);
+        for (int i = 0; i < tags.length && !current.isEmpty(); i++) {
+            ArrayList<Element> next = new ArrayList<>();
+            for (Element parent : current) {
+                if (tags[i].equals("*")) {
+                    for (Element child : parent)
+                        if (indexes[i] < 0 || child.getIndex() == indexes[i])
+                            next.add(child);
+                } else if (indexes[i] >= 0) {
+                    if (parent.isDirectChild(tags[i], indexes[i]))
+                        next.add(parent.getDirectChild(tags[i], indexes[i]));
+                } else
+                    next.addAll(parent.getDirectChildren(tags[i]));
+            }
+            current = next;
+        }
+        current.removeIf(predicate.negate());
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    public static ElementPath compile(String path) {
+        ElementPath compiled = cache.get(path);
+        if (compiled == null) {
+            compiled = new ElementPath(path);
+            if (cache.size() >= CACHE_LIMIT)
+                cache.clear();
+            cache.put(path, compiled);
+        }
+        return compiled;
+    }
+
+    private static boolean isIndex(String index) {
+        int start = index.startsWith("-") ? 1 : 0;
+        if (index.length() == start || index.length() - start > 9)
+            return false;
+        for (int i = start; i < index.length(); i++)
+            if (index.charAt(i) < '0' || index.charAt(i) > '9')
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot.utilities;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Reads PML in a single pass, scanning each line once for its indentation, tag, and content, and reports the elements
+ * it finds to an ElementListener. Only the tags and indentation of the currently open elements are kept, so memory use
+ * depends on the depth of the file rather than its length. Lines that are not valid elements are skipped.
+ */
+public class ElementReader implements Closeable {
+
+    private final BufferedReader reader;
+    private String[] tags = new String[16];
+    private int[] indents = new int[16];
+    private int depth = 0;
+
+    public ElementReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    public void read(ElementListener listener) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int length = line.length();
+            int indent = 0;
+            while (indent < length && line.charAt(indent) == ' ')
+                indent++;
+            int i = 0, k = 1;
+            while (i < indent && k < depth)
+                i += indents[k++];
+            if (indent - i <= 0 || depth == 0)
+                k--;
+            while (depth > k) {
+                listener.endElement(tags[depth], indents[depth]);
+                tags[depth--] = null;
+            }
+            int end = indent;
+            while (end < length && line.charAt(end) != ' ')
+                end++;
+            if (end - indent < 3)
+                continue;
+            char open = line.charAt(indent), close = line.charAt(end - 1);
+            if ((open != '<' && open != '(') || (close != '>' && close != ')'))
+                continue;
+            String tag = line.substring(indent + 1, end - 1);
+            if (!tag.equals("&") && !Element.isTag(tag))
+                continue;
+            int start = end + 1;
+            if (start < length && line.charAt(start) == ' ')
+                start++;
+            String content = start < length ? line.substring(start) : "";
+            if (tag.equals("&"))
+                listener.appendContent(content);
+            else {
+                listener.startElement(tag, content, open == '(' && close == ')');
+                if (indent - i > 0)
+                    indents[k] = indent - i;
+                if (++depth == tags.length) {
+                    tags = Arrays.copyOf(tags, depth * 2);
+                    indents = Arrays.copyOf(indents, depth * 2);
+                }
+                tags[depth] = tag;
+                indents[depth] = 2;
+            }
+        }
+        while (depth > 0) {
+            listener.endElement(tags[depth], indents[depth]);
+            tags[depth--] = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    public static void read(String filename, ElementListener listener) throws IOException {
+        File file = new File(filename.endsWith(".pml") ? filename : filename + ".pml");
+        if (!file.exists())
+            return;
+        try (ElementReader reader = new ElementReader(new FileReader(file))) {
+            reader.read(listener);
+        }
+    }
+}
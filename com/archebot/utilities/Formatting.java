@@ -0,0 +1,233 @@
+/* Copyright (C) 2014-2016 Perrin Swanson | http://perrinswanson.com
+ * This file is part of the ArcheBot Project Library.
+ *
+ * Distribution, implementation, and modification of this library and its contents
+ * is free provided this copyright notice is not modified or removed.
+ * All documentation referencing this library must acknowledge the original owner,
+ * and any modifications made to the files must be fully documented.
+ */
+package com.archebot.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This utility class converts between the &amp; shortcuts used to format outgoing messages, the mIRC control codes
+ * sent to the server, and plain or styled text. Every method works in a single pass over the line and returns the
+ * line itself when there is nothing to change.
+ * No instances of this class should exist or be used in programs.
+ *
+ * @author Perrin Swanson
+ * @see StringUtils
+ */
+public final class Formatting {
+
+    public static final char BOLD = '\2';
+    public static final char COLOR = '\3';
+    public static final char HEX_COLOR = '\4';
+    public static final char MONOSPACE = '\21';
+    public static final char REVERSE = '\26';
+    public static final char ITALIC = '\35';
+    public static final char STRIKETHROUGH = '\36';
+    public static final char UNDERLINE = '\37';
+    public static final char RESET = '\17';
+
+    /**
+     * Private, empty constructor - no class objects should be created.
+     */
+    private Formatting() {}
+
+    /**
+     * Splits a line containing control codes into spans of text with the same style.
+     * Codes that toggle a style end the current span, and reset codes clear every style.
+     *
+     * @param line the line to be decoded
+     * @return the styled spans of the line, in order
+     */
+    public static List<Span> decode(String line) {
+        ArrayList<Span> spans = new ArrayList<>();
+        Span style = new Span("", false, false, false, -1, -1);
+        int start = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (!isCode(c))
+                continue;
+            if (i > start)
+                spans.add(style.withText(line.substring(start, i)));
+            switch (c) {
+                case BOLD: style = new Span("", !style.bold, style.italic, style.underline, style.foreground, style.background); break;
+                case ITALIC: style = new Span("", style.bold, !style.italic, style.underline, style.foreground, style.background); break;
+                case UNDERLINE: style = new Span("", style.bold, style.italic, !style.underline, style.foreground, style.background); break;
+                case RESET: style = new Span("", false, false, false, -1, -1); break;
+                case COLOR:
+                    int end = skipColor(line, i + 1);
+                    int comma = line.indexOf(',', i + 1);
+                    if (end == i + 1)
+                        style = new Span("", style.bold, style.italic, style.underline, -1, -1);
+                    else if (comma > 0 && comma < end)
+                        style = new Span("", style.bold, style.italic, style.underline, Integer.parseInt(line.substring(i + 1, comma)), Integer.parseInt(line.substring(comma + 1, end)));
+                    else
+                        style = new Span("", style.bold, style.italic, style.underline, Integer.parseInt(line.substring(i + 1, end)), style.background);
+                    i = end - 1;
+                    break;
+                case HEX_COLOR: i = skipHexColor(line, i + 1) - 1; break;
+            }
+            start = i + 1;
+        }
+        if (start < line.length())
+            spans.add(style.withText(line.substring(start)));
+        return spans;
+    }
+
+    /**
+     * Replaces the formatting shortcuts in a line with their control codes.
+     * &amp;b is bold, &amp;i is italic, &amp;u is underline, &amp;r is reset, and any other &amp; starts a color code,
+     * such as &amp;4 for red. A backslash before an &amp; keeps it as a literal &amp;.
+     *
+     * @param line the line to be encoded
+     * @return the line with control codes in place of shortcuts
+     */
+    public static String encode(String line) {
+        if (line.indexOf('&') < 0)
+            return line;
+        StringBuilder builder = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length() && line.charAt(i + 1) == '&') {
+                builder.append('&');
+                i++;
+            } else if (c == '&') {
+                char next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+                switch (next) {
+                    case 'b': builder.append(BOLD); i++; break;
+                    case 'i': builder.append(ITALIC); i++; break;
+                    case 'u': builder.append(UNDERLINE); i++; break;
+                    case 'r': builder.append(RESET); i++; break;
+                    default: builder.append(COLOR);
+                }
+            } else
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks whether a character is a formatting control code.
+     *
+     * @param c the character to be checked
+     * @return true if the character is a control code
+     */
+    public static boolean isCode(char c) {
+        return c == BOLD || c == COLOR || c == HEX_COLOR || c == MONOSPACE || c == REVERSE || c == ITALIC
+                || c == STRIKETHROUGH || c == UNDERLINE || c == RESET;
+    }
+
+    /**
+     * Removes every control code from a line, including the numbers following color codes.
+     *
+     * @param line the line to be stripped
+     * @return the plain text of the line
+     */
+    public static String strip(String line) {
+        int i = 0;
+        while (i < line.length() && !isCode(line.charAt(i)))
+            i++;
+        if (i == line.length())
+            return line;
+        StringBuilder builder = new StringBuilder(line.length());
+        builder.append(line, 0, i);
+        for (; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == COLOR)
+                i = skipColor(line, i + 1) - 1;
+            else if (c == HEX_COLOR)
+                i = skipHexColor(line, i + 1) - 1;
+            else if (!isCode(c))
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static int skipColor(String line, int i) {
+        int end = skipDigits(line, i);
+        if (end > i && end + 1 < line.length() && line.charAt(end) == ',' && Character.isDigit(line.charAt(end + 1)))
+            end = skipDigits(line, end + 1);
+        return end;
+    }
+
+    private static int skipDigits(String line, int i) {
+        int end = i;
+        while (end < line.length() && end < i + 2 && line.charAt(end) >= '0' && line.charAt(end) <= '9')
+            end++;
+        return end;
+    }
+
+    private static int skipHexColor(String line, int i) {
+        int end = i;
+        while (end < line.length() && end < i + 6 && Character.digit(line.charAt(end), 16) >= 0)
+            end++;
+        if (end == i + 6 && end + 6 < line.length() && line.charAt(end) == ',') {
+            int background = end + 1;
+            while (background < line.length() && background < end + 7 && Character.digit(line.charAt(background), 16) >= 0)
+                background++;
+            if (background == end + 7)
+                end = background;
+        }
+        return end;
+    }
+
+    /**
+     * A run of text with a single style. Colors are mIRC color numbers, or -1 when no color is set.
+     */
+    public static final class Span {
+
+        private final String text;
+        private final boolean bold;
+        private final boolean italic;
+        private final boolean underline;
+        private final int foreground;
+        private final int background;
+
+        private Span(String text, boolean bold, boolean italic, boolean underline, int foreground, int background) {
+            this.text = text;
+            this.bold = bold;
+            this.italic = italic;
+            this.underline = underline;
+            this.foreground = foreground;
+            this.background = background;
+        }
+
+        public int getBackground() {
+            return background;
+        }
+
+        public int getForeground() {
+            return foreground;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isBold() {
+            return bold;
+        }
+
+        public boolean isItalic() {
+            return italic;
+        }
+
+        public boolean isUnderline() {
+            return underline;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        private Span withText(String text) {
+            return new Span(text, bold, italic, underline, foreground, background);
+        }
+    }
+}